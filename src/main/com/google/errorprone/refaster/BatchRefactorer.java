@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.io.CharStreams;
+import com.google.errorprone.apply.DescriptionBasedDiff;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * Compiles source files and applies a {@link CodeTransformer} to them in batches of a bounded
+ * size, so that only the attributed syntax trees of a single batch are ever held in memory.
+ *
+ * <p>Each batch is compiled by a separate javac task, which is discarded, along with all its
+ * trees, once the diffs for the batch have been reported.  Source files which the batch
+ * references but does not contain, such as the other files of the same project, should be made
+ * available with a {@code -sourcepath} or {@code -classpath} option.
+ */
+public final class BatchRefactorer {
+  private static final Logger logger = Logger.getLogger(BatchRefactorer.class.toString());
+
+  /**
+   * Receives the diff produced for each source file.
+   */
+  public interface DiffListener {
+    void onDiff(JavaFileObject source, DescriptionBasedDiff diff) throws IOException;
+  }
+
+  public static BatchRefactorer create(
+      CodeTransformer transformer, Iterable<String> javacOptions, int batchSize) {
+    checkArgument(batchSize > 0, "batchSize must be positive but was %s", batchSize);
+    return new BatchRefactorer(transformer, ImmutableList.copyOf(javacOptions), batchSize);
+  }
+
+  private final CodeTransformer transformer;
+  private final ImmutableList<String> javacOptions;
+  private final int batchSize;
+
+  private BatchRefactorer(
+      CodeTransformer transformer, ImmutableList<String> javacOptions, int batchSize) {
+    this.transformer = checkNotNull(transformer);
+    this.javacOptions = javacOptions;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Refactors the specified source files, reporting the diff for each of them to
+   * {@code listener} as each batch is completed.  Source files with compilation errors are
+   * skipped.
+   */
+  public void refactor(Iterable<? extends JavaFileObject> sources, DiffListener listener)
+      throws IOException {
+    JavaCompiler compiler = JavacTool.create();
+    StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(null, Locale.ENGLISH, UTF_8);
+    try {
+      for (List<? extends JavaFileObject> batch : Iterables.partition(sources, batchSize)) {
+        refactorBatch(compiler, fileManager, batch, listener);
+      }
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  /**
+   * Refactors a single batch.  javac stops attributing a task once any of its sources has an
+   * error, so the batch is recompiled without the sources that have errors until it compiles
+   * cleanly, and only then is the transformer applied.
+   */
+  private void refactorBatch(JavaCompiler compiler, StandardJavaFileManager fileManager,
+      List<? extends JavaFileObject> batch, DiffListener listener) throws IOException {
+    List<JavaFileObject> remaining = new ArrayList<>(batch);
+    while (!remaining.isEmpty()) {
+      DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+      JavacTaskImpl task = (JavacTaskImpl) compiler.getTask(CharStreams.nullWriter(),
+          fileManager, diagnostics, javacOptions, null, remaining);
+      Iterable<? extends CompilationUnitTree> trees = task.parse();
+      task.analyze();
+      Set<JavaFileObject> erroneous = new LinkedHashSet<>();
+      boolean otherErrors = false;
+      for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+          if (remaining.contains(diagnostic.getSource())) {
+            erroneous.add(diagnostic.getSource());
+          } else {
+            otherErrors = true;
+          }
+        }
+      }
+      if (erroneous.isEmpty()) {
+        if (otherErrors) {
+          logger.log(Level.WARNING, "Skipping {0} sources, which did not compile",
+              remaining.size());
+          return;
+        }
+        for (CompilationUnitTree tree : trees) {
+          DescriptionBasedDiff diff = DescriptionBasedDiff.create((JCCompilationUnit) tree);
+          transformer.apply(tree, task.getContext(), diff);
+          listener.onDiff(tree.getSourceFile(), diff);
+        }
+        return;
+      }
+      for (JavaFileObject source : erroneous) {
+        logger.log(Level.WARNING, "Skipping {0}, which did not compile", source.getName());
+      }
+      remaining.removeAll(erroneous);
+    }
+  }
+}
@@ -21,10 +21,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.base.Objects;
 import com.google.common.collect.ForwardingMap;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
 import com.google.common.reflect.TypeToken;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nullable;
@@ -33,6 +34,9 @@ import javax.annotation.Nullable;
  * A type-safe map from objects of type {@code Bindings.Key<V>}, which consist of a {@code String}
  * key and a {@code Bindings.Key} subclass, to values of type {@code V}.
  *
+ * <p>Bindings are stored in a persistent linked list, so that copying and snapshotting are
+ * constant-time operations.  Views of the map are unmodifiable.
+ *
  * @author Louis Wasserman
  */
 public class Bindings extends ForwardingMap<Bindings.Key<?>, Object> {
@@ -41,28 +45,43 @@ public class Bindings extends ForwardingMap<Bindings.Key<?>, Object> {
    * {@code V} type.
    */
   public abstract static class Key<V> {
+    private static final ClassValue<Class<?>> RAW_VALUE_TYPES = new ClassValue<Class<?>>() {
+      @Override
+      protected Class<?> computeValue(Class<?> keyClass) {
+        return TypeToken.of(keyClass).resolveType(Key.class.getTypeParameters()[0]).getRawType();
+      }
+    };
+
     private final String identifier;
+    private final int hashCode;
 
     protected Key(String identifier) {
       this.identifier = checkNotNull(identifier);
+      this.hashCode = Objects.hashCode(getClass(), identifier);
     }
 
     public String getIdentifier() {
       return identifier;
     }
 
-    TypeToken<V> getValueType() {
-      return new TypeToken<V>(getClass()) {};
+    /**
+     * Returns the raw type of the values bound to this key, resolved reflectively once per key
+     * class.
+     */
+    final Class<?> getRawValueType() {
+      return RAW_VALUE_TYPES.get(getClass());
     }
 
     @Override
     public int hashCode() {
-      return Objects.hashCode(getClass(), identifier);
+      return hashCode;
     }
 
     @Override
     public boolean equals(@Nullable Object obj) {
-      if (obj != null && this.getClass() == obj.getClass()) {
+      if (this == obj) {
+        return true;
+      } else if (obj != null && this.getClass() == obj.getClass()) {
         Key<?> key = (Key<?>) obj;
         return identifier.equals(key.identifier);
       }
@@ -75,10 +94,48 @@ public class Bindings extends ForwardingMap<Bindings.Key<?>, Object> {
     }
   }
   
-  private final Map<Key<?>, Object> contents;
+  /**
+   * An immutable node in a linked list of bindings.  Since nodes are never modified, copies of
+   * a {@code Bindings} share all their nodes until one of them changes, and only the nodes in front
+   * of a replaced binding are ever copied.
+   */
+  private static final class Node {
+    final Key<?> key;
+    final Object value;
+    @Nullable final Node next;
+
+    Node(Key<?> key, Object value, @Nullable Node next) {
+      this.key = key;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  /**
+   * Returns the bindings starting at {@code node}, without the binding for {@code key}.
+   */
+  @Nullable
+  private static Node without(@Nullable Node node, Object key) {
+    if (node == null) {
+      return null;
+    } else if (node.key.equals(key)) {
+      return node.next;
+    } else {
+      return new Node(node.key, node.value, without(node.next, key));
+    }
+  }
+
+  @Nullable private Node head;
+  private final boolean mutable;
+
+  /**
+   * A map view of the bindings starting at {@code head}, lazily created and discarded whenever
+   * the bindings change.
+   */
+  @Nullable private ImmutableMap<Key<?>, Object> view;
   
   public static Bindings create() {
-    return new Bindings();
+    return new Bindings(null, true);
   }
   
   public static <V> Bindings create(Key<V> key, V value) {
@@ -94,52 +151,130 @@ public class Bindings extends ForwardingMap<Bindings.Key<?>, Object> {
     return result;
   }
   
+  /**
+   * Returns a mutable copy of the specified bindings.  This is a constant-time operation.
+   */
   public static Bindings create(Bindings bindings) {
-    return new Bindings(bindings);
+    return new Bindings(bindings.head, true);
   }
-  
-  private Bindings() {
-    this(new HashMap<Key<?>, Object>());
+
+  private Bindings(@Nullable Node head, boolean mutable) {
+    this.head = head;
+    this.mutable = mutable;
   }
 
-  private Bindings(Bindings bindings) {
-    this(Maps.newHashMap(bindings.contents));
+  @Override
+  protected Map<Key<?>, Object> delegate() {
+    if (view == null) {
+      List<Node> nodes = new ArrayList<>();
+      for (Node node = head; node != null; node = node.next) {
+        nodes.add(node);
+      }
+      ImmutableMap.Builder<Key<?>, Object> builder = ImmutableMap.builder();
+      for (Node node : Lists.reverse(nodes)) {
+        builder.put(node.key, node.value);
+      }
+      view = builder.build();
+    }
+    return view;
   }
 
-  private Bindings(Map<Key<?>, Object> contents) {
-    this.contents = contents;
+  @Override
+  public Object get(@Nullable Object key) {
+    for (Node node = head; node != null; node = node.next) {
+      if (node.key.equals(key)) {
+        return node.value;
+      }
+    }
+    return null;
   }
 
   @Override
-  protected Map<Key<?>, Object> delegate() {
-    return contents;
+  public boolean containsKey(@Nullable Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return head == null;
   }
   
   @SuppressWarnings("unchecked")
   public <V> V getBinding(Key<V> key) {
     checkNotNull(key);
-    return (V) super.get(key);
+    return (V) get(key);
   }
   
   @SuppressWarnings("unchecked")
   public <V> V putBinding(Key<V> key, V value) {
     checkNotNull(value);
-    return (V) super.put(key, value);
+    return (V) put(key, value);
   }
 
   @Override
   public Object put(Key<?> key, Object value) {
+    checkMutable();
     checkNotNull(key, "key");
     checkNotNull(value, "value");
-    return super.put(key, key.getValueType().getRawType().cast(value));
+    value = key.getRawValueType().cast(value);
+    Object oldValue = get(key);
+    head = new Node(key, value, (oldValue == null) ? head : without(head, key));
+    view = null;
+    return oldValue;
+  }
+
+  @Override
+  public Object remove(@Nullable Object key) {
+    checkMutable();
+    Object oldValue = get(key);
+    if (oldValue != null) {
+      head = without(head, key);
+      view = null;
+    }
+    return oldValue;
   }
 
   @Override
   public void putAll(Map<? extends Key<?>, ? extends Object> map) {
     standardPutAll(map);
   }
+
+  @Override
+  public void clear() {
+    checkMutable();
+    head = null;
+    view = null;
+  }
+
+  /**
+   * Returns an opaque marker for the current contents of these bindings, which may be restored
+   * with {@link #rollback}.  This is a constant-time operation, and allocates nothing.
+   */
+  @Nullable
+  Object mark() {
+    return head;
+  }
+
+  /**
+   * Restores these bindings to their contents when the specified marker was obtained from
+   * {@link #mark}, discarding any bindings made since.
+   */
+  void rollback(@Nullable Object mark) {
+    checkMutable();
+    head = (Node) mark;
+    view = null;
+  }
+
+  private void checkMutable() {
+    if (!mutable) {
+      throw new UnsupportedOperationException("Bindings snapshots cannot be modified");
+    }
+  }
   
+  /**
+   * Returns an immutable copy of these bindings.  This is a constant-time operation.
+   */
   public Bindings snapshot() {
-    return new Bindings(ImmutableMap.copyOf(contents));
+    return new Bindings(head, false);
   }
 }
@@ -25,9 +25,11 @@ import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableClassToInstanceMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.fixes.Fix;
 import com.google.errorprone.fixes.SuggestedFix;
 
+import com.sun.source.tree.Tree.Kind;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.JCTree.JCBlock;
 import com.sun.tools.javac.tree.JCTree.JCStatement;
@@ -37,8 +39,10 @@ import com.sun.tools.javac.util.Warner;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.lang.annotation.Annotation;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
@@ -84,6 +88,20 @@ public abstract class BlockTemplate extends Template<BlockTemplateMatch> {
   
   abstract ImmutableList<UStatement> templateStatements();      
 
+  @Override
+  Set<Kind> targetKinds() {
+    return EnumSet.of(Kind.BLOCK);
+  }
+
+  @Override
+  Set<String> requiredIdentifiers() {
+    ImmutableSet.Builder<String> required = ImmutableSet.builder();
+    for (UStatement statement : templateStatements()) {
+      required.addAll(ReferencedIdentifiers.requiredBy(statement));
+    }
+    return required.build();
+  }
+
   /**
    * If the tree is a {@link JCBlock}, returns a list of disjoint matches corresponding to
    * the exact list of template statements found consecutively; otherwise, returns an
@@ -96,13 +114,18 @@ public abstract class BlockTemplate extends Template<BlockTemplateMatch> {
       JCBlock block = (JCBlock) tree;
       List<JCStatement> targetStatements = ImmutableList.copyOf(block.getStatements());
       ImmutableList.Builder<BlockTemplateMatch> builder = ImmutableList.builder();
+      Unifier unifier = new Unifier(context);
+      Object emptyMark = unifier.mark();
       for (int start = 0; start + templateStatements().size() <= targetStatements.size(); 
           start++) {
         int end = start + templateStatements().size();
-        Unifier unifier = match(targetStatements.subList(start, end), context);
-        if (unifier != null) {
-          builder.add(new BlockTemplateMatch(block, unifier, start, end));
+        Unifier success = match(targetStatements.subList(start, end), unifier);
+        if (success != null) {
+          builder.add(new BlockTemplateMatch(block, success, start, end));
           start = end - 1;
+          unifier = new Unifier(context);
+        } else {
+          unifier.rollback(emptyMark);
         }
       }
       return builder.build();
@@ -111,20 +134,22 @@ public abstract class BlockTemplate extends Template<BlockTemplateMatch> {
   }
 
   @Nullable
-  private Unifier match(List<JCStatement> targetStatements, Context context) {
+  private Unifier match(List<JCStatement> targetStatements, Unifier unifier) {
     checkArgument(templateStatements().size() == targetStatements.size());
-    Unifier unifier = new Unifier(context);
     for (int i = 0; i < templateStatements().size() && unifier != null; i++) {
       unifier = templateStatements().get(i).unify(targetStatements.get(i), unifier);
     }
     if (unifier != null) {
+      TypecheckStatistics.recordUnification(unifier.getContext());
       Inliner inliner = unifier.createInliner();
-      try {
-        return typecheck(
-            unifier, inliner, new Warner(targetStatements.get(0)), expectedTypes(inliner),
-            actualTypes(inliner));
-      } catch (CouldNotResolveImportException e) {
-        logger.log(FINE, "Failure to resolve import", e);
+      synchronized (SubContext.javacLock(unifier.getContext())) {
+        try {
+          return typecheck(
+              unifier, inliner, new Warner(targetStatements.get(0)), expectedTypes(inliner),
+              actualTypes(inliner));
+        } catch (CouldNotResolveImportException e) {
+          logger.log(FINE, "Failure to resolve import", e);
+        }
       }
     }
     return null;
@@ -168,11 +193,14 @@ public abstract class BlockTemplate extends Template<BlockTemplateMatch> {
     try {
       int nTemplates = templateStatements().size();
       int nTargets = targetStatements.size();
+      String comments =
+          CommentPolicy.instance(context).preservedComments(context, targetStatements);
       if (nTemplates <= nTargets) {
         for (int i = 0; i < nTemplates; i++) {
           fix.replace(
               targetStatements.get(i), 
-              printStatement(context, templateStatements().get(i).inline(inliner)));
+              ((i == 0) ? comments : "")
+                  + printStatement(context, templateStatements().get(i).inline(inliner)));
         }
         for (int i = templateStatements().size(); i < nTargets; i++) {
           fix.delete(targetStatements.get(i));
@@ -181,13 +209,15 @@ public abstract class BlockTemplate extends Template<BlockTemplateMatch> {
         for (int i = 0; i < nTargets - 1; i++) {
           fix.replace(
               targetStatements.get(i),
-              printStatement(context, templateStatements().get(i).inline(inliner)));
+              ((i == 0) ? comments : "")
+                  + printStatement(context, templateStatements().get(i).inline(inliner)));
         }
         int last = nTargets - 1;
         ImmutableList<UStatement> remainingTemplate = 
             templateStatements().subList(last, templateStatements().size());
         fix.replace(targetStatements.get(last), 
-            printStatements(context, inliner.inlineList(remainingTemplate)));
+            ((last == 0) ? comments : "")
+                + printStatements(context, inliner.inlineList(remainingTemplate)));
       }
     } catch (CouldNotResolveImportException e) {
       logger.log(SEVERE, "Failure to resolve import in replacement", e);
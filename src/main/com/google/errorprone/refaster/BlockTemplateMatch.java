@@ -22,15 +22,13 @@ import com.google.common.collect.ImmutableList;
 
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.JCTree.JCBlock;
-import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
 import com.sun.tools.javac.tree.JCTree.JCStatement;
 
-import java.io.IOException;
 import java.util.List;
 
 /**
  * A representation of a match against a {@code BlockTemplate}.  The "location" is
- * the first statement of the match.
+ * the first statement of the match, and the match extends to the last.
  * 
  * @author lowasser@google.com (Louis Wasserman)
  */
@@ -47,15 +45,7 @@ class BlockTemplateMatch extends TemplateMatch {
   }
   
   @Override
-  public String getRange(JCCompilationUnit unit) {
-    try {
-      CharSequence sequence = unit.getSourceFile().getCharContent(true);
-      JCTree firstStatement = statements.get(0);
-      JCTree lastStatement = statements.get(statements.size() - 1);
-      return sequence.subSequence(firstStatement.getStartPosition(),
-          lastStatement.getEndPosition(unit.endPositions)).toString();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+  public JCTree getLastLocation() {
+    return statements.get(statements.size() - 1);
   }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symtab;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.util.Context;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The classes referenced by templates, by fully qualified name, so that inlining every replacement
+ * of a compilation resolves each class at most once, and each unresolvable class fails fast after
+ * the first attempt.  The cache is kept in the root {@code Context} of the compilation, but classes
+ * are resolved with the compiler of the context they are requested in, and remembered separately
+ * for each compiler, so that a {@link SubContext} registering its own compiler never sees the
+ * classes, or the failures, of another.  Resolution may complete symbols, so lookups hold the
+ * {@linkplain SubContext#javacLock javac lock} of the compilation.
+ */
+final class ClassSymbolCache {
+  private static final Context.Factory<ClassSymbolCache> FACTORY =
+      new Context.Factory<ClassSymbolCache>() {
+        @Override
+        public ClassSymbolCache make(Context root) {
+          return new ClassSymbolCache();
+        }
+      };
+
+  static ClassSymbolCache instance(Context context) {
+    return SubContext.rootInstance(context, ClassSymbolCache.class, FACTORY);
+  }
+
+  /**
+   * The classes one compiler has resolved, and the names it could not resolve.
+   */
+  private static final class Resolutions {
+    final Map<String, ClassSymbol> resolved = new HashMap<>();
+    final Set<String> unresolvable = new HashSet<>();
+  }
+
+  private final Map<JavaCompiler, Resolutions> resolutions;
+
+  private ClassSymbolCache() {
+    this.resolutions = new WeakHashMap<>();
+  }
+
+  /**
+   * Returns the class with the specified fully qualified name, resolving it in the specified
+   * context if it has not been resolved yet.
+   *
+   * @throws CouldNotResolveImportException if the class could not be resolved
+   */
+  ClassSymbol resolve(Context context, String qualifiedClass)
+      throws CouldNotResolveImportException {
+    synchronized (SubContext.javacLock(context)) {
+      return resolveLocked(context, qualifiedClass);
+    }
+  }
+
+  private ClassSymbol resolveLocked(Context context, String qualifiedClass)
+      throws CouldNotResolveImportException {
+    JavaCompiler compiler = JavaCompiler.instance(context);
+    Resolutions compilerResolutions = resolutions.get(compiler);
+    if (compilerResolutions == null) {
+      compilerResolutions = new Resolutions();
+      resolutions.put(compiler, compilerResolutions);
+    }
+    ClassSymbol result = compilerResolutions.resolved.get(qualifiedClass);
+    if (result != null) {
+      return result;
+    } else if (compilerResolutions.unresolvable.contains(qualifiedClass)) {
+      throw new CouldNotResolveImportException(qualifiedClass);
+    }
+    Symbol symbol = compiler.resolveIdent(qualifiedClass);
+    if (symbol.equals(Symtab.instance(context).errSymbol) || !(symbol instanceof ClassSymbol)) {
+      compilerResolutions.unresolvable.add(qualifiedClass);
+      throw new CouldNotResolveImportException(qualifiedClass);
+    }
+    result = (ClassSymbol) symbol;
+    compilerResolutions.resolved.put(qualifiedClass, result);
+    return result;
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The positions of the comments in the compilation unit currently being refactored, found by a
+ * lightweight lexer that skips string and character literals.  The comments are kept as sorted,
+ * disjoint intervals, so whether a range of the source contains a comment is a binary search.
+ */
+final class CommentIndex extends CompilationUnitCache<CommentIndex.Comments, RuntimeException> {
+  private static final Context.Factory<CommentIndex> FACTORY =
+      new Context.Factory<CommentIndex>() {
+        @Override
+        public CommentIndex make(Context context) {
+          return new CommentIndex(context);
+        }
+      };
+
+  static CommentIndex instance(Context context) {
+    return instance(context, CommentIndex.class, FACTORY);
+  }
+
+  static CommentIndex register(Context context) {
+    return register(context, CommentIndex.class, FACTORY);
+  }
+
+  /**
+   * The comments of a compilation unit.
+   */
+  static final class Comments {
+    private final CharSequence source;
+
+    /** The start positions of the comments, inclusive, in increasing order. */
+    private int[] starts = new int[0];
+
+    /** The end positions of the comments, exclusive, in increasing order. */
+    private int[] ends = new int[0];
+
+    private int size;
+
+    private Comments(CharSequence source) {
+      this.source = source;
+    }
+
+    private void add(int start, int end) {
+      if (size == starts.length) {
+        int capacity = Math.max(16, size * 2);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+      }
+      starts[size] = start;
+      ends[size] = end;
+      size++;
+    }
+
+    /**
+     * Returns the index of the first comment ending after the specified position, or
+     * {@code size} if there is none.
+     */
+    private int firstEndingAfter(int position) {
+      int i = Arrays.binarySearch(ends, 0, size, position);
+      return (i >= 0) ? i + 1 : -i - 1;
+    }
+  }
+
+  private final Context context;
+
+  private CommentIndex(Context context) {
+    this.context = context;
+  }
+
+  /**
+   * Returns whether any comment in the specified compilation unit overlaps the range of the
+   * source from {@code start}, inclusive, to {@code end}, exclusive.
+   */
+  boolean containsComment(JCCompilationUnit unit, int start, int end) {
+    Comments comments = get(unit);
+    int i = comments.firstEndingAfter(start);
+    return i < comments.size && comments.starts[i] < end;
+  }
+
+  /**
+   * Returns the text of the comments in the specified compilation unit that overlap the range of
+   * the source from {@code start}, inclusive, to {@code end}, exclusive, in order.
+   */
+  List<String> commentsIn(JCCompilationUnit unit, int start, int end) {
+    Comments comments = get(unit);
+    List<String> result = new ArrayList<>();
+    for (int i = comments.firstEndingAfter(start);
+        i < comments.size && comments.starts[i] < end; i++) {
+      result.add(comments.source.subSequence(comments.starts[i], comments.ends[i]).toString());
+    }
+    return result;
+  }
+
+  @Override
+  Comments compute(CompilationUnitTree unit) {
+    CharSequence source;
+    try {
+      source = SourceTextCache.instance(context).getSourceText((JCCompilationUnit) unit);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    Comments comments = new Comments(source);
+    int length = source.length();
+    int i = 0;
+    while (i < length) {
+      char c = source.charAt(i);
+      if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+        int start = i;
+        i += 2;
+        while (i < length && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+          i++;
+        }
+        comments.add(start, i);
+      } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+        int start = i;
+        i += 2;
+        while (i < length && !(source.charAt(i) == '/' && source.charAt(i - 1) == '*'
+            && i - 1 > start + 1)) {
+          i++;
+        }
+        i = Math.min(i + 1, length);
+        comments.add(start, i);
+      } else if (c == '"' || c == '\'') {
+        i = skipLiteral(source, i);
+      } else {
+        i++;
+      }
+    }
+    return comments;
+  }
+
+  /**
+   * Returns the position just after the string or character literal starting at the specified
+   * position.
+   */
+  private static int skipLiteral(CharSequence source, int start) {
+    char quote = source.charAt(start);
+    int i = start + 1;
+    while (i < source.length()) {
+      char c = source.charAt(i);
+      if (c == '\\') {
+        i += 2;
+      } else if (c == quote || c == '\n' || c == '\r') {
+        return i + 1;
+      } else {
+        i++;
+      }
+    }
+    return source.length();
+  }
+}
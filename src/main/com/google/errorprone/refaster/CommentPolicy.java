@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+
+/**
+ * Policy specifying how to treat matches whose source contains comments, which are not part of
+ * the syntax tree and so would be lost by the replacement.
+ */
+public enum CommentPolicy {
+  /**
+   * Skip matches containing comments, leaving that code as it is.
+   */
+  REJECT_MATCHES_WITH_COMMENTS,
+
+  /**
+   * Replace matches regardless of any comments they contain, which are lost.
+   */
+  IGNORE_COMMENTS,
+
+  /**
+   * Replace matches regardless of any comments they contain, moving those comments to the start of
+   * the replacement.  Line comments are rewritten as block comments, so that they do not swallow
+   * the rest of the replacement.
+   */
+  PRESERVE_COMMENTS {
+    @Override
+    public String preservedComments(Context context, JCTree first, JCTree last) {
+      JCCompilationUnit unit = context.get(JCCompilationUnit.class);
+      StringBuilder result = new StringBuilder();
+      for (String comment : CommentIndex.instance(context).commentsIn(unit,
+          first.getStartPosition(), last.getEndPosition(unit.endPositions))) {
+        if (comment.startsWith("//")) {
+          result.append("/*").append(comment.substring(2).replace("*/", "* /")).append(" */");
+        } else {
+          result.append(comment);
+        }
+        result.append(' ');
+      }
+      return result.toString();
+    }
+  };
+
+  public static void bind(Context context, CommentPolicy policy) {
+    context.put(CommentPolicy.class, checkNotNull(policy));
+  }
+
+  /**
+   * Returns the policy bound in the specified context, or {@link #REJECT_MATCHES_WITH_COMMENTS}
+   * if none is.
+   */
+  public static CommentPolicy instance(Context context) {
+    CommentPolicy result = context.get(CommentPolicy.class);
+    return (result == null) ? REJECT_MATCHES_WITH_COMMENTS : result;
+  }
+
+  /**
+   * Returns the text to insert before the replacement of the source from the start of
+   * {@code first} to the end of {@code last}, in the compilation unit bound in the specified
+   * context.
+   */
+  public String preservedComments(Context context, JCTree first, JCTree last) {
+    return "";
+  }
+
+  /**
+   * Returns the text to insert before the replacement of the specified trees, such as the
+   * statements of a block match.  Only the comments within each tree are included, as the source
+   * between the trees, and any comments there, is left in place.
+   */
+  public String preservedComments(Context context, Iterable<? extends JCTree> trees) {
+    StringBuilder result = new StringBuilder();
+    for (JCTree tree : trees) {
+      result.append(preservedComments(context, tree, tree));
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2026 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.util.Context;
+
+import javax.annotation.Nullable;
+
+/**
+ * A value derived from the compilation unit currently being refactored, computed the first time
+ * it is needed and recomputed only when a different compilation unit is passed in.
+ *
+ * <p>A cache is not thread-safe.  {@link RefasterScanner} {@linkplain #register registers} a new
+ * instance of each cache in the {@code Context} of every compilation unit it scans, so compilation
+ * units scanned concurrently never share one.
+ *
+ * @param <V> the type of the cached value
+ * @param <X> the type of exception thrown when the value cannot be computed
+ */
+abstract class CompilationUnitCache<V, X extends Exception> {
+  /**
+   * Returns the cache of the specified class in the specified context, creating one in that
+   * context if none is registered in it or the contexts beneath it.
+   */
+  static <C extends CompilationUnitCache<?, ?>> C instance(
+      Context context, Class<C> key, Context.Factory<C> factory) {
+    C result = context.get(key);
+    return (result == null) ? register(context, key, factory) : result;
+  }
+
+  /**
+   * Registers a new cache of the specified class in the specified context, shadowing any
+   * registered in the contexts beneath it.
+   */
+  static <C extends CompilationUnitCache<?, ?>> C register(
+      Context context, Class<C> key, Context.Factory<C> factory) {
+    C result = factory.make(context);
+    context.put(key, result);
+    return result;
+  }
+
+  @Nullable private CompilationUnitTree unit;
+  @Nullable private V value;
+
+  /**
+   * Returns the value for the specified compilation unit.
+   */
+  final V get(CompilationUnitTree unit) throws X {
+    if (unit != this.unit) {
+      value = compute(unit);
+      this.unit = unit;
+    }
+    return value;
+  }
+
+  /**
+   * Computes the value for the specified compilation unit.
+   */
+  abstract V compute(CompilationUnitTree unit) throws X;
+}
@@ -28,6 +28,7 @@ import com.google.errorprone.fixes.Fix;
 import com.google.errorprone.fixes.SuggestedFix;
 import com.google.errorprone.refaster.annotation.AlsoNegation;
 
+import com.sun.source.tree.Tree.Kind;
 import com.sun.tools.javac.code.Type;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.JCTree.JCArrayAccess;
@@ -50,6 +51,7 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.lang.annotation.Annotation;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
@@ -107,6 +109,16 @@ public abstract class ExpressionTemplate extends Template<ExpressionTemplateMatc
         expression().negate(), returnType());
   }
 
+  @Override
+  Set<Kind> targetKinds() {
+    return expression().targetKinds();
+  }
+
+  @Override
+  Set<String> requiredIdentifiers() {
+    return ReferencedIdentifiers.requiredBy(expression());
+  }
+
   /**
    * Returns the matches of this template against the specified target AST.
    */
@@ -127,22 +139,25 @@ public abstract class ExpressionTemplate extends Template<ExpressionTemplateMatc
   public Unifier unify(JCExpression target, Unifier unifier) {
     unifier = expression().unify(target, unifier);
     if (unifier != null) {
+      TypecheckStatistics.recordUnification(unifier.getContext());
       Inliner inliner = unifier.createInliner();
-      try {
-        List<Type> expectedTypes = expectedTypes(inliner);
-        List<Type> actualTypes = actualTypes(inliner);
-        /*
-         * The Java compiler's type inference doesn't directly take into account the expected
-         * return type, so we test the return type by treating the expected return type as an
-         * extra method argument, and the actual type of the return expression as its actual
-         * value.
-         */
-        expectedTypes = expectedTypes.prepend(returnType().inline(inliner));
-        actualTypes = actualTypes.prepend(target.type);
-
-        return typecheck(unifier, inliner, new Warner(target), expectedTypes, actualTypes);
-      } catch (CouldNotResolveImportException e) {
-        logger.log(FINE, "Failure to resolve import", e);
+      synchronized (SubContext.javacLock(unifier.getContext())) {
+        try {
+          List<Type> expectedTypes = expectedTypes(inliner);
+          List<Type> actualTypes = actualTypes(inliner);
+          /*
+           * The Java compiler's type inference doesn't directly take into account the expected
+           * return type, so we test the return type by treating the expected return type as an
+           * extra method argument, and the actual type of the return expression as its actual
+           * value.
+           */
+          expectedTypes = expectedTypes.prepend(returnType().inline(inliner));
+          actualTypes = actualTypes.prepend(target.type);
+
+          return typecheck(unifier, inliner, new Warner(target), expectedTypes, actualTypes);
+        } catch (CouldNotResolveImportException e) {
+          logger.log(FINE, "Failure to resolve import", e);
+        }
       }
     }
     return null;
@@ -160,7 +175,9 @@ public abstract class ExpressionTemplate extends Template<ExpressionTemplateMatc
     try {
       StringWriter writer = new StringWriter();
       pretty(inliner.getContext(), writer).printExpr(expression().inline(inliner), prec);
-      fix.replace(match.getLocation(), writer.toString());
+      String comments = CommentPolicy.instance(inliner.getContext())
+          .preservedComments(inliner.getContext(), match.getLocation(), match.getLocation());
+      fix.replace(match.getLocation(), comments + writer);
     } catch (CouldNotResolveImportException e) {
       logger.log(SEVERE, "Failure to resolve in replacement", e);
     } catch (IOException e) {
@@ -175,7 +192,7 @@ public abstract class ExpressionTemplate extends Template<ExpressionTemplateMatc
    */
   private static int getPrecedence(JCTree leaf, Context context) {
     JCCompilationUnit comp = context.get(JCCompilationUnit.class);
-    JCTree parent = TreeInfo.pathFor(leaf, comp).get(1);
+    JCTree parent = (JCTree) ParentMap.instance(context).getParent(comp, leaf);
 
     // In general, this should match the logic in com.sun.tools.javac.tree.Pretty.
     //
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.common.base.Optional;
+
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.List;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A cache of the type inference results for templates, shared by every match in a compilation.
+ * A template frequently matches many sites with identical argument types, and inference is the
+ * most expensive part of checking a match once unification has succeeded.  Since {@code Type}s
+ * are only meaningful within a single compilation, the cache lives in the root {@code Context} of
+ * the compilation, where the threads matching its compilation units all find it.
+ */
+final class InferenceCache {
+  private static final int MAX_SIZE = 4096;
+
+  private static final Context.Factory<InferenceCache> FACTORY =
+      new Context.Factory<InferenceCache>() {
+        @Override
+        public InferenceCache make(Context root) {
+          return new InferenceCache(Types.instance(root));
+        }
+      };
+
+  static InferenceCache instance(Context context) {
+    return SubContext.rootInstance(context, InferenceCache.class, FACTORY);
+  }
+
+  /**
+   * An inference problem for a template, determined by the types already bound to its type
+   * variables and the actual types of its expression arguments.  Types are compared with
+   * {@link Types#isSameType}.
+   */
+  final class Key {
+    private final Template<?> template;
+    private final List<Type> boundTypes;
+    private final List<Type> actualTypes;
+    private final int hashCode;
+
+    private Key(Template<?> template, List<Type> boundTypes, List<Type> actualTypes) {
+      this.template = template;
+      this.boundTypes = boundTypes;
+      this.actualTypes = actualTypes;
+      this.hashCode = 31 * (31 * System.identityHashCode(template) + hash(boundTypes))
+          + hash(actualTypes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (obj instanceof Key) {
+        Key other = (Key) obj;
+        return template == other.template
+            && sameTypes(boundTypes, other.boundTypes)
+            && sameTypes(actualTypes, other.actualTypes);
+      }
+      return false;
+    }
+  }
+
+  private final Types types;
+  private final Map<Key, Optional<List<Type>>> results;
+
+  private InferenceCache(Types types) {
+    this.types = types;
+    this.results = new LinkedHashMap<Key, Optional<List<Type>>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Optional<List<Type>>> eldest) {
+        return size() > MAX_SIZE;
+      }
+    };
+  }
+
+  /**
+   * Returns the key for inferring instantiations of the free type variables of the specified
+   * template.  {@code boundTypes} contains the type bound to each type variable of the template,
+   * or {@code null} if it is free.
+   */
+  Key key(Template<?> template, List<Type> boundTypes, List<Type> actualTypes) {
+    return new Key(template, boundTypes, actualTypes);
+  }
+
+  /**
+   * Returns the instantiations of the free type variables previously inferred for the specified
+   * key, {@code Optional.absent()} if inference previously failed, or {@code null} if this
+   * problem has not been seen before.
+   */
+  @Nullable
+  synchronized Optional<List<Type>> get(Key key) {
+    return results.get(key);
+  }
+
+  /**
+   * Records the result of inference for the specified key.  Instantiations must not mention the
+   * type variables an {@code Inliner} created for the template, which other matches cannot use.
+   */
+  synchronized void put(Key key, Optional<List<Type>> instantiations) {
+    results.put(key, instantiations);
+  }
+
+  private boolean sameTypes(List<Type> list1, List<Type> list2) {
+    for (; list1.nonEmpty() && list2.nonEmpty(); list1 = list1.tail, list2 = list2.tail) {
+      Type t1 = list1.head;
+      Type t2 = list2.head;
+      if (t1 == null || t2 == null ? t1 != t2 : !types.isSameType(t1, t2)) {
+        return false;
+      }
+    }
+    return list1.isEmpty() && list2.isEmpty();
+  }
+
+  /**
+   * Returns a hash code consistent with {@link Types#isSameType} for all the types that can be
+   * the types of expressions, which never have the same type with different type symbols.
+   */
+  private static int hash(List<Type> list) {
+    int result = 1;
+    for (Type type : list) {
+      result = 31 * result + ((type == null || type.tsym == null) 
+          ? 0 : System.identityHashCode(type.tsym));
+    }
+    return result;
+  }
+}
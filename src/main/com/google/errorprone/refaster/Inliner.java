@@ -23,7 +23,6 @@ import com.google.common.collect.Sets;
 import com.google.errorprone.refaster.Bindings.Key;
 import com.google.errorprone.refaster.UTypeVar.TypeWithExpression;
 
-import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import com.sun.tools.javac.code.Symbol.TypeSymbol;
 import com.sun.tools.javac.code.Symtab;
@@ -35,7 +34,6 @@ import com.sun.tools.javac.code.Type.WildcardType;
 import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.comp.Enter;
 import com.sun.tools.javac.comp.Infer;
-import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
 import com.sun.tools.javac.tree.TreeMaker;
 import com.sun.tools.javac.util.Context;
@@ -79,12 +77,7 @@ public final class Inliner {
   }
   
   public ClassSymbol resolveClass(String qualifiedClass) throws CouldNotResolveImportException {
-    Symbol symbol = JavaCompiler.instance(context).resolveIdent(qualifiedClass);
-    if (symbol.equals(symtab().errSymbol) || !(symbol instanceof ClassSymbol)) {
-      throw new CouldNotResolveImportException(qualifiedClass);
-    } else {
-      return (ClassSymbol) symbol;
-    }
+    return ClassSymbolCache.instance(context).resolve(context, qualifiedClass);
   }
   
   public Context getContext() {
@@ -224,6 +217,14 @@ public final class Inliner {
     return typeVar;
   }
   
+  /**
+   * Returns the type variables this {@code Inliner} has created with {@link #inlineAsVar}, which
+   * are distinct from those of every other {@code Inliner}.
+   */
+  List<Type> createdTypeVars() {
+    return List.<Type>from(typeVarCache.values().toArray(new Type[0]));
+  }
+
   Type inlineTypeVar(UTypeVar var) throws CouldNotResolveImportException {
     Optional<TypeWithExpression> typeVarBinding = getOptionalBinding(var.key());
     if (typeVarBinding.isPresent()) {
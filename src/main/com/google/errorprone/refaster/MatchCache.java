@@ -0,0 +1,357 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Optional;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A persistent cache of the results of refactoring source files, so that source files which have
+ * not changed since they were last refactored with the same rules and classpath need not be
+ * compiled or matched again.
+ *
+ * <p>Results are keyed by a hash of the source text, a fingerprint of the rules, such as a hash of
+ * their {@link RefasterRuleBundle}, and a fingerprint of the classpath; see {@link #key}.  Each
+ * result is the refactored source text, or absent if refactoring left the source file unchanged.
+ *
+ * <p>The cache is stored in a directory as an append-only log of results.  When the cache is
+ * opened, only an index from each key to the position of its result in the log is read into
+ * memory; the refactored text is read from the log when it is looked up.  Once the results exceed
+ * a size limit, the least recently used results are evicted, and the log is compacted when the
+ * cache is closed.
+ */
+public final class MatchCache implements Closeable {
+  private static final int MAGIC = 0x52464d43; // "RFMC"
+  private static final int VERSION = 1;
+  private static final String LOG_NAME = "matches.log";
+
+  /**
+   * The approximate number of bytes taken by a result besides its key and refactored text.
+   */
+  private static final int ENTRY_OVERHEAD = 128;
+
+  /**
+   * Opens the cache stored in the specified directory, creating it if necessary.
+   *
+   * @param maxBytes the approximate number of bytes of results to retain
+   */
+  public static MatchCache open(File directory, long maxBytes) throws IOException {
+    checkArgument(maxBytes > 0, "maxBytes must be positive but was %s", maxBytes);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create match cache directory " + directory);
+    }
+    MatchCache cache = new MatchCache(new File(directory, LOG_NAME), maxBytes);
+    cache.load();
+    return cache;
+  }
+
+  /**
+   * Returns the key of the result of refactoring the specified source text.
+   */
+  public static String key(
+      CharSequence sourceText, String rulesFingerprint, String classpathFingerprint) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    putField(hasher, sourceText.toString());
+    putField(hasher, rulesFingerprint);
+    putField(hasher, classpathFingerprint);
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns a fingerprint of the specified serialized rules.
+   */
+  public static String rulesFingerprint(byte[] ruleBundle) {
+    return Hashing.sha256().hashBytes(ruleBundle).toString();
+  }
+
+  /**
+   * Returns a fingerprint of the specified classpath, which changes whenever an entry is added,
+   * removed, or modified.  Directory entries are fingerprinted by the path, length and
+   * modification time of every file beneath them.
+   */
+  public static String classpathFingerprint(Iterable<File> classpath) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (File entry : classpath) {
+      putFile(hasher, entry.getAbsoluteFile());
+    }
+    return hasher.hash().toString();
+  }
+
+  private static void putFile(Hasher hasher, File file) {
+    putField(hasher, file.getPath());
+    File[] children = file.listFiles();
+    if (children == null) {
+      hasher.putLong(file.length()).putLong(file.lastModified());
+    } else {
+      Arrays.sort(children);
+      hasher.putInt(children.length);
+      for (File child : children) {
+        putFile(hasher, child);
+      }
+    }
+  }
+
+  /**
+   * Adds the specified field to a hash, prefixed with its length so that the boundaries between
+   * consecutive fields are unambiguous.
+   */
+  private static void putField(Hasher hasher, String field) {
+    byte[] bytes = field.getBytes(UTF_8);
+    hasher.putInt(bytes.length).putBytes(bytes);
+  }
+
+  /**
+   * The position in the log of the refactored text of a result.
+   */
+  private static final class Result {
+    /** The position of the refactored text in the log. */
+    final long offset;
+
+    /** The length of the refactored text in bytes, or -1 if it is absent. */
+    final int length;
+
+    Result(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  private final File log;
+  private final long maxBytes;
+
+  /**
+   * The index of the results in the log, in order of access.
+   */
+  private final LinkedHashMap<String, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long size;
+
+  /**
+   * The length of the log, including any results appended since the cache was opened.
+   */
+  private long logLength;
+
+  /**
+   * Whether the log contains evicted or overwritten results.
+   */
+  private boolean dirty;
+
+  @Nullable private DataOutputStream appender;
+  @Nullable private RandomAccessFile reader;
+
+  private MatchCache(File log, long maxBytes) {
+    this.log = log;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the result recorded for the specified key, if there is one: the refactored source
+   * text, or absent if refactoring left the source file unchanged.
+   */
+  public synchronized Optional<Optional<String>> get(String key) throws IOException {
+    Result result = results.get(key);
+    if (result == null) {
+      return Optional.absent();
+    } else if (result.length < 0) {
+      return Optional.of(Optional.<String>absent());
+    }
+    if (reader == null) {
+      reader = new RandomAccessFile(log, "r");
+    }
+    return Optional.of(Optional.of(read(reader, result)));
+  }
+
+  /**
+   * Records the result of refactoring the source file with the specified key: the refactored
+   * source text, or absent if refactoring left the source file unchanged.
+   */
+  public synchronized void put(String key, Optional<String> refactoredSource) throws IOException {
+    if (appender == null) {
+      appender = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(log, true)));
+      if (logLength == 0) {
+        appender.writeInt(MAGIC);
+        appender.writeInt(VERSION);
+        logLength = 8;
+      }
+    }
+    byte[] text = refactoredSource.isPresent() ? refactoredSource.get().getBytes(UTF_8) : null;
+    Result result = writeResult(appender, logLength, key, text);
+    appender.flush();
+    logLength = result.offset + Math.max(result.length, 0);
+    add(key, result);
+  }
+
+  /**
+   * Closes this cache, compacting its log if necessary.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (appender != null) {
+      appender.close();
+      appender = null;
+    }
+    try {
+      if (dirty) {
+        compact();
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+        reader = null;
+      }
+    }
+  }
+
+  /**
+   * Rewrites the log with only the results still in the cache, in order of access.
+   */
+  private void compact() throws IOException {
+    File compacted = new File(log.getPath() + ".tmp");
+    if (reader == null) {
+      reader = new RandomAccessFile(log, "r");
+    }
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(compacted)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      long position = 8;
+      for (Map.Entry<String, Result> entry : results.entrySet()) {
+        Result result = entry.getValue();
+        byte[] text = (result.length < 0) ? null : read(reader, result).getBytes(UTF_8);
+        Result written = writeResult(out, position, entry.getKey(), text);
+        position = written.offset + Math.max(written.length, 0);
+        entry.setValue(written);
+      }
+      logLength = position;
+    }
+    reader.close();
+    reader = null;
+    Files.move(compacted.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    dirty = false;
+  }
+
+  private void add(String key, Result result) {
+    Result previous = results.put(key, result);
+    if (previous != null) {
+      size -= sizeOf(key, previous);
+      dirty = true;
+    }
+    size += sizeOf(key, result);
+    Iterator<Map.Entry<String, Result>> eldest = results.entrySet().iterator();
+    while (size > maxBytes && results.size() > 1) {
+      Map.Entry<String, Result> evicted = eldest.next();
+      size -= sizeOf(evicted.getKey(), evicted.getValue());
+      eldest.remove();
+      dirty = true;
+    }
+  }
+
+  private static long sizeOf(String key, Result result) {
+    return ENTRY_OVERHEAD + 2L * key.length() + Math.max(result.length, 0);
+  }
+
+  /**
+   * Indexes the results in the log, discarding the log if it is not in the current format and
+   * truncating it at the end of its last valid result.
+   */
+  private void load() throws IOException {
+    if (!log.exists()) {
+      return;
+    }
+    long validLength = 0;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(log)))) {
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          throw new IOException("Unrecognized match cache format");
+        }
+        validLength = 8;
+        while (true) {
+          String key = in.readUTF();
+          int length = in.readInt();
+          if (length < -1) {
+            throw new IOException("Invalid result length " + length);
+          }
+          long offset = validLength + 2 + key.getBytes(UTF_8).length + 4;
+          if (length > 0 && in.skipBytes(length) < length) {
+            throw new EOFException();
+          }
+          add(key, new Result(offset, length));
+          validLength = offset + Math.max(length, 0);
+        }
+      } catch (IOException e) {
+        // the end of the log, or an incomplete or corrupt result, which is discarded along with
+        // everything after it
+      }
+    }
+    if (validLength < log.length()) {
+      try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+        file.setLength(validLength);
+      }
+    }
+    logLength = validLength;
+  }
+
+  private static String read(RandomAccessFile file, Result result) throws IOException {
+    byte[] bytes = new byte[result.length];
+    file.seek(result.offset);
+    file.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  /**
+   * Writes a result at the specified position of a log, returning where its text was written.
+   */
+  private static Result writeResult(DataOutputStream out, long position, String key,
+      @Nullable byte[] text) throws IOException {
+    out.writeUTF(key);
+    if (text == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(text.length);
+      out.write(text);
+    }
+    return new Result(
+        position + 2 + key.getBytes(UTF_8).length + 4, (text == null) ? -1 : text.length);
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.errorprone.MatchListener;
+import com.google.errorprone.VisitorState;
+
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * The {@code VisitorState} shared by the error-prone {@code Matcher}s of {@code @Matches}
+ * annotations while matching templates, positioned at the tree being tested.
+ *
+ * <p>While a template is matched against the leaf of a known {@code TreePath}, the paths of the
+ * trees inside it extend that path rather than being recomputed from the compilation unit.
+ */
+final class MatcherState {
+  static MatcherState instance(Context context) {
+    MatcherState result = context.get(MatcherState.class);
+    if (result == null) {
+      result = new MatcherState(context);
+      context.put(MatcherState.class, result);
+    }
+    return result;
+  }
+
+  private final VisitorState visitorState;
+  @Nullable private TreePath matchPath;
+  @Nullable private Tree lastTarget;
+  @Nullable private VisitorState lastState;
+
+  private MatcherState(Context context) {
+    this.visitorState = new VisitorState(context, new DummyMatchListener());
+  }
+
+  /**
+   * Sets the path of the tree templates are currently being matched against, or {@code null} if
+   * it is not known.
+   */
+  void setMatchPath(@Nullable TreePath matchPath) {
+    this.matchPath = matchPath;
+    this.lastTarget = null;
+    this.lastState = null;
+  }
+
+  /**
+   * Returns a {@code VisitorState} whose path leads to the specified target.
+   */
+  VisitorState forTarget(Tree target, Context context) {
+    if (target != lastTarget) {
+      lastState = visitorState.withPath(pathTo(target, context));
+      lastTarget = target;
+    }
+    return lastState;
+  }
+
+  private TreePath pathTo(Tree target, Context context) {
+    JCCompilationUnit unit = context.get(JCCompilationUnit.class);
+    ParentMap parentMap = ParentMap.instance(context);
+    if (matchPath != null && matchPath.getCompilationUnit() == unit) {
+      List<Tree> descent = new ArrayList<>();
+      for (Tree node = target; node != null; node = parentMap.getParent(unit, node)) {
+        if (node == matchPath.getLeaf()) {
+          TreePath path = matchPath;
+          for (int i = descent.size() - 1; i >= 0; i--) {
+            path = new TreePath(path, descent.get(i));
+          }
+          return path;
+        }
+        descent.add(node);
+      }
+    }
+    return parentMap.getPath(unit, target);
+  }
+
+  // TODO(mdempsky): Fix error-prone; this shouldn't be necessary.
+  private static class DummyMatchListener implements MatchListener {
+    @Override
+    public void onMatch(Tree tree) {
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2026 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.DescriptionListener;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.util.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies a {@link CodeTransformer} to many attributed compilation units in parallel on a
+ * {@code ForkJoinPool}, each in its own {@link SubContext}.
+ *
+ * <p>The transformer must be safe to apply concurrently, as {@link RefasterRule},
+ * {@link RefasterRuleSet} and {@link RuleIndex} are.  Those transformers unify templates with the
+ * compilation units of a single compilation in parallel, and only hold the compilation's
+ * {@linkplain SubContext#javacLock javac lock} while unifying types, type checking and generating
+ * replacements, since javac itself is not thread-safe.  The shared root of each compilation's
+ * {@code Context} is {@linkplain SubContext#prepareRoot prepared} before the transformer runs, so
+ * that the threads only read it.
+ */
+public final class ParallelTransformer {
+  public static ParallelTransformer create(CodeTransformer transformer, ForkJoinPool pool) {
+    return new ParallelTransformer(transformer, pool);
+  }
+
+  private final CodeTransformer transformer;
+  private final ForkJoinPool pool;
+
+  private ParallelTransformer(CodeTransformer transformer, ForkJoinPool pool) {
+    this.transformer = checkNotNull(transformer);
+    this.pool = checkNotNull(pool);
+  }
+
+  /**
+   * Applies the transformer to each of the specified compilation units of a single compilation,
+   * reporting the descriptions for each compilation unit to the listener {@code listeners}
+   * returns for it.  Returns once all the compilation units have been transformed.
+   */
+  public void apply(Iterable<? extends CompilationUnitTree> compilationUnits, Context context,
+      Function<? super CompilationUnitTree, ? extends DescriptionListener> listeners) {
+    ImmutableMap.Builder<CompilationUnitTree, Context> contexts = ImmutableMap.builder();
+    for (CompilationUnitTree compilationUnit : compilationUnits) {
+      contexts.put(compilationUnit, context);
+    }
+    apply(contexts.build(), listeners);
+  }
+
+  /**
+   * Applies the transformer to each of the specified compilation units, in the context of its
+   * compilation, reporting the descriptions for each compilation unit to the listener
+   * {@code listeners} returns for it.  Returns once all the compilation units have been
+   * transformed.
+   */
+  public void apply(Map<? extends CompilationUnitTree, ? extends Context> compilationUnits,
+      final Function<? super CompilationUnitTree, ? extends DescriptionListener> listeners) {
+    final List<RecursiveAction> tasks = new ArrayList<>();
+    for (final Map.Entry<? extends CompilationUnitTree, ? extends Context> entry
+        : compilationUnits.entrySet()) {
+      SubContext.prepareRoot(entry.getValue());
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          CompilationUnitTree compilationUnit = entry.getKey();
+          transformer.apply(compilationUnit, new SubContext(entry.getValue()),
+              listeners.apply(compilationUnit));
+        }
+      });
+    }
+    pool.invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+  }
+}
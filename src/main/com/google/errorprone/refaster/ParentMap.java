@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.util.Context;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * The parent of each tree in the compilation unit currently being refactored, built the first
+ * time it is needed.  Finding the parent or path of a matched tree is then proportional to its
+ * depth, rather than to the size of the compilation unit.
+ */
+final class ParentMap extends CompilationUnitCache<Map<Tree, Tree>, RuntimeException> {
+  private static final Context.Factory<ParentMap> FACTORY = new Context.Factory<ParentMap>() {
+    @Override
+    public ParentMap make(Context context) {
+      return new ParentMap();
+    }
+  };
+
+  static ParentMap instance(Context context) {
+    return instance(context, ParentMap.class, FACTORY);
+  }
+
+  static ParentMap register(Context context) {
+    return register(context, ParentMap.class, FACTORY);
+  }
+
+  private ParentMap() {}
+
+  @Override
+  Map<Tree, Tree> compute(CompilationUnitTree unit) {
+    final Map<Tree, Tree> parents = new IdentityHashMap<>();
+    new TreeScanner<Void, Tree>() {
+      @Override
+      public Void scan(Tree tree, Tree parent) {
+        if (tree == null) {
+          return null;
+        }
+        parents.put(tree, parent);
+        return super.scan(tree, tree);
+      }
+    }.scan(unit, null);
+    return parents;
+  }
+
+  /**
+   * Returns the parent of the specified tree in the specified compilation unit, or {@code null}
+   * if it is the compilation unit itself or does not appear in it.
+   */
+  @Nullable
+  Tree getParent(CompilationUnitTree unit, Tree tree) {
+    return get(unit).get(tree);
+  }
+
+  /**
+   * Returns the path from the specified compilation unit to the specified tree, or {@code null}
+   * if it does not appear in the compilation unit.
+   */
+  @Nullable
+  TreePath getPath(CompilationUnitTree unit, Tree tree) {
+    Map<Tree, Tree> parents = get(unit);
+    List<Tree> ancestors = new ArrayList<>();
+    for (Tree node = tree; node != unit; node = parents.get(node)) {
+      if (node == null) {
+        return null;
+      }
+      ancestors.add(node);
+    }
+    TreePath path = new TreePath(unit);
+    for (int i = ancestors.size() - 1; i >= 0; i--) {
+      path = new TreePath(path, ancestors.get(i));
+    }
+    return path;
+  }
+}
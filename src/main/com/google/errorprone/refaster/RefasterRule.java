@@ -25,6 +25,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableClassToInstanceMap;
 import com.google.common.collect.ImmutableList;
 import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.refaster.annotation.UseCommentPolicy;
 import com.google.errorprone.refaster.annotation.UseImportPolicy;
 
 import com.sun.source.tree.CompilationUnitTree;
@@ -82,6 +83,11 @@ public abstract class RefasterRule<M extends TemplateMatch, T extends Template<M
   }
   
   RefasterRule() {}
+
+  /**
+   * The set of just this rule, created the first time this rule is applied by itself.
+   */
+  @Nullable private transient volatile RefasterRuleSet ruleSet;
   
   abstract String qualifiedTemplateClass();
   abstract ImmutableList<T> beforeTemplates();
@@ -92,8 +98,16 @@ public abstract class RefasterRule<M extends TemplateMatch, T extends Template<M
   
   @Override
   public void apply(CompilationUnitTree tree, Context context, DescriptionListener listener) {
-    RefasterScanner.create(this, listener).scan(tree,
-        prepareContext(context, (JCCompilationUnit) tree));
+    ruleSet().apply(tree, context, listener);
+  }
+
+  RefasterRuleSet ruleSet() {
+    RefasterRuleSet result = ruleSet;
+    if (result == null) {
+      // racing threads may each create a set, which is harmless
+      ruleSet = result = RefasterRuleSet.create(ImmutableList.<RefasterRule<?, ?>>of(this));
+    }
+    return result;
   }
 
   private ImportPolicy importPolicy() {
@@ -107,16 +121,27 @@ public abstract class RefasterRule<M extends TemplateMatch, T extends Template<M
     return ImportPolicy.IMPORT_TOP_LEVEL;
   }
   
+  CommentPolicy commentPolicy() {
+    UseCommentPolicy commentPolicy = annotations().getInstance(UseCommentPolicy.class);
+    return (commentPolicy == null)
+        ? CommentPolicy.REJECT_MATCHES_WITH_COMMENTS
+        : commentPolicy.value();
+  }
+
   boolean rejectMatchesWithComments() {
-    return true; // TODO(lowasser): worth making configurable?
+    return commentPolicy() == CommentPolicy.REJECT_MATCHES_WITH_COMMENTS;
   }
   
-  private Context prepareContext(Context baseContext, JCCompilationUnit compilationUnit) {
+  /**
+   * Returns a context for applying this rule to the specified compilation unit.
+   */
+  Context prepareContext(Context baseContext, JCCompilationUnit compilationUnit) {
     Context context = new SubContext(baseContext);
     if (context.get(JavaFileManager.class) == null) {
       JavacFileManager.preRegister(context);
     }
     ImportPolicy.bind(context, importPolicy());
+    CommentPolicy.bind(context, commentPolicy());
     context.put(JCCompilationUnit.class, compilationUnit);
     context.put(PackageSymbol.class, compilationUnit.packge);
     return context;
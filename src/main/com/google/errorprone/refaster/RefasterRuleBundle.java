@@ -0,0 +1,684 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Ordering;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nullable;
+
+import sun.reflect.ReflectionFactory;
+
+/**
+ * Reads and writes bundles of precompiled {@link CodeTransformer}s, such as {@link RefasterRule}s,
+ * so that tools can load rules without templating their source.
+ *
+ * <p>A bundle starts with a magic number, a format version, the number of transformers and the
+ * length of a deflated body of five sections:
+ *
+ * <ol>
+ * <li>A string table holding each distinct string once.
+ * <li>A serialized list of the objects the node table cannot represent, such as annotations.
+ * <li>A table of node classes, each written as its name followed by the names of its properties.
+ *     The properties of a node class are the fields of an {@code AutoValue_} class, ordered by
+ *     name, so that the format never depends on the order in which reflection lists fields or
+ *     parameters.  A bundle whose node classes have since gained, lost or renamed properties is
+ *     rejected when it is read.
+ * <li>A flat table of nodes.  Each node is written as the index of its class followed by the
+ *     values of its properties; other nodes are written as their index in the table, and always
+ *     precede the nodes referring to them.  Equal nodes are written once.
+ * <li>The values of the transformers themselves.
+ * </ol>
+ *
+ * <p>{@link UTypeVar}s are the only mutable nodes, since recursively bounded type variables refer
+ * to themselves.  They are written by name only, and their bounds are set once the whole table has
+ * been read.
+ */
+public final class RefasterRuleBundle {
+  private static final int MAGIC = 0x52465242; // "RFRB"
+
+  /**
+   * The version of the bundle format, which must be incremented whenever the format changes.
+   */
+  static final int VERSION = 1;
+
+  private static final byte NULL = 0;
+  private static final byte NODE = 1;
+  private static final byte STRING = 2;
+  private static final byte OBJECT = 3;
+  private static final byte BOOLEAN = 4;
+  private static final byte BYTE = 5;
+  private static final byte SHORT = 6;
+  private static final byte CHAR = 7;
+  private static final byte INT = 8;
+  private static final byte LONG = 9;
+  private static final byte FLOAT = 10;
+  private static final byte DOUBLE = 11;
+  private static final byte ENUM = 12;
+  private static final byte CLASS = 13;
+  private static final byte LIST = 14;
+  private static final byte SET = 15;
+  private static final byte MAP = 16;
+
+  private RefasterRuleBundle() {}
+
+  /**
+   * Writes the specified transformers as a bundle to the specified stream, which is not closed.
+   *
+   * @throws IllegalArgumentException if any of the transformers is not {@link Serializable}
+   */
+  public static void write(Collection<? extends CodeTransformer> transformers, OutputStream out)
+      throws IOException {
+    for (CodeTransformer transformer : transformers) {
+      checkArgument(transformer instanceof Serializable,
+          "%s cannot be bundled because it is not Serializable", transformer);
+    }
+    Writer writer = new Writer();
+    for (CodeTransformer transformer : transformers) {
+      writer.write(transformer);
+    }
+    DataOutputStream header = new DataOutputStream(out);
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION);
+    header.writeInt(transformers.size());
+    writer.writeTo(header);
+    header.flush();
+  }
+
+  /**
+   * Reads a bundle written by {@link #write} from the specified stream, which is not closed, and
+   * is left positioned just after the bundle.
+   *
+   * @throws IOException if the stream does not contain a bundle in the current format
+   */
+  public static ImmutableList<CodeTransformer> read(InputStream in) throws IOException {
+    DataInputStream header = new DataInputStream(in);
+    if (header.readInt() != MAGIC) {
+      throw new IOException("Not a Refaster rule bundle");
+    }
+    int version = header.readInt();
+    if (version != VERSION) {
+      throw new IOException(String.format(
+          "Unsupported Refaster rule bundle version %d; expected %d", version, VERSION));
+    }
+    int size = header.readInt();
+    if (size < 0) {
+      throw new IOException("Invalid Refaster rule bundle");
+    }
+    Reader reader = Reader.readFrom(header);
+    ImmutableList.Builder<CodeTransformer> transformers = ImmutableList.builder();
+    for (int i = 0; i < size; i++) {
+      transformers.add(reader.read(CodeTransformer.class));
+    }
+    return transformers.build();
+  }
+
+  private static boolean isProperty(Field field) {
+    return !Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers());
+  }
+
+  private static final Function<Field, String> FIELD_NAME = new Function<Field, String>() {
+    @Override
+    public String apply(Field field) {
+      return field.getName();
+    }
+  };
+
+  /**
+   * The properties of a node class, and a constructor which creates its instances the way
+   * deserialization does: without running the constructors of the class or of its serializable
+   * superclasses, so that each property can then be set by name.
+   */
+  private static final class NodeClass {
+    /**
+     * Returns the node class of the specified class, or {@code null} if its instances cannot be
+     * written to the node table.
+     */
+    @Nullable
+    static NodeClass of(Class<?> clazz) {
+      if (!clazz.getSimpleName().startsWith("AutoValue_")
+          || !Serializable.class.isAssignableFrom(clazz)) {
+        return null;
+      }
+      Class<?> base = clazz.getSuperclass();
+      for (; Serializable.class.isAssignableFrom(base); base = base.getSuperclass()) {
+        for (Field field : base.getDeclaredFields()) {
+          if (isProperty(field)) {
+            return null;
+          }
+        }
+      }
+      Constructor<?> baseConstructor;
+      try {
+        baseConstructor = base.getDeclaredConstructor();
+      } catch (NoSuchMethodException e) {
+        return null;
+      }
+      if (Modifier.isPrivate(baseConstructor.getModifiers())) {
+        return null;
+      }
+      List<Field> properties = new ArrayList<>();
+      for (Field field : clazz.getDeclaredFields()) {
+        if (isProperty(field)) {
+          field.setAccessible(true);
+          properties.add(field);
+        }
+      }
+      Constructor<?> constructor = ReflectionFactory.getReflectionFactory()
+          .newConstructorForSerialization(clazz, baseConstructor);
+      constructor.setAccessible(true);
+      return new NodeClass(
+          Ordering.natural().onResultOf(FIELD_NAME).immutableSortedCopy(properties), constructor);
+    }
+
+    final ImmutableList<Field> properties;
+    private final Constructor<?> constructor;
+
+    private NodeClass(ImmutableList<Field> properties, Constructor<?> constructor) {
+      this.properties = properties;
+      this.constructor = constructor;
+    }
+
+    ImmutableList<String> propertyNames() {
+      ImmutableList.Builder<String> names = ImmutableList.builder();
+      for (Field property : properties) {
+        names.add(property.getName());
+      }
+      return names.build();
+    }
+
+    Object newInstance(Object[] values) throws ReflectiveOperationException {
+      Object node = constructor.newInstance();
+      for (int i = 0; i < values.length; i++) {
+        properties.get(i).set(node, values[i]);
+      }
+      return node;
+    }
+  }
+
+  /**
+   * Writes values in the format of a bundle's body, assigning strings, objects, node classes and
+   * nodes their indices in the tables while the values referring to them are written.  Other
+   * formats of precompiled rules, such as that of {@link RuleIndex}, embed bodies written by a
+   * {@code Writer}.
+   */
+  static final class Writer {
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringTable = new ArrayList<>();
+    // Objects are written once per class and equal value, like nodes, so that nodes holding equal
+    // objects, such as equal maps of annotations, are shared too.
+    private final Map<List<?>, Integer> objects = new HashMap<>();
+    private final List<Object> objectTable = new ArrayList<>();
+    private final Map<Object, Integer> nodes = new IdentityHashMap<>();
+    private final Map<ByteBuffer, Integer> nodesByRecord = new HashMap<>();
+    private final ByteArrayOutputStream nodeTable = new ByteArrayOutputStream();
+    private final DataOutputStream nodeTableOut = new DataOutputStream(nodeTable);
+    private final Map<Class<?>, NodeClass> nodeClasses = new HashMap<>();
+    private final Map<Class<?>, Integer> classes = new HashMap<>();
+    private final List<int[]> classTable = new ArrayList<>();
+    private final List<UTypeVar> typeVars = new ArrayList<>();
+    private int nodeCount = 0;
+    private final ByteArrayOutputStream values = new ByteArrayOutputStream();
+    private final DataOutputStream valuesOut = new DataOutputStream(values);
+
+    /**
+     * Writes the specified value after the values written so far.
+     *
+     * @throws IllegalArgumentException if the value or a node it refers to cannot be written
+     */
+    void write(@Nullable Object value) throws IOException {
+      writeValue(value, valuesOut);
+    }
+
+    /**
+     * Writes the tables followed by the values written so far to the specified stream, as a
+     * deflated body prefixed with its length.
+     */
+    void writeTo(DataOutput out) throws IOException {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      Deflater deflater = new Deflater();
+      try {
+        DeflaterOutputStream deflated = new DeflaterOutputStream(body, deflater);
+        DataOutputStream bodyOut = new DataOutputStream(deflated);
+        writeTables(bodyOut);
+        valuesOut.flush();
+        values.writeTo(bodyOut);
+        bodyOut.flush();
+        deflated.finish();
+      } finally {
+        deflater.end();
+      }
+      out.writeInt(body.size());
+      out.write(body.toByteArray());
+    }
+
+    private void writeTables(DataOutput out) throws IOException {
+      out.writeInt(stringTable.size());
+      for (String string : stringTable) {
+        byte[] bytes = string.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+      ObjectOutputStream objectsOut = new ObjectOutputStream(serialized);
+      objectsOut.writeObject(new ArrayList<>(objectTable));
+      objectsOut.close();
+      out.writeInt(serialized.size());
+      out.write(serialized.toByteArray());
+
+      out.writeInt(classTable.size());
+      for (int[] nodeClass : classTable) {
+        out.writeInt(nodeClass[0]);
+        out.writeInt(nodeClass.length - 1);
+        for (int i = 1; i < nodeClass.length; i++) {
+          out.writeInt(nodeClass[i]);
+        }
+      }
+
+      out.writeInt(nodeCount);
+      nodeTableOut.flush();
+      out.write(nodeTable.toByteArray());
+      out.writeInt(typeVars.size());
+      for (UTypeVar typeVar : typeVars) {
+        out.writeInt(nodes.get(typeVar));
+        out.writeInt(nodes.get(typeVar.getLowerBound()));
+        out.writeInt(nodes.get(typeVar.getUpperBound()));
+      }
+    }
+
+    private void writeValue(@Nullable Object value, DataOutput out) throws IOException {
+      if (value == null) {
+        out.writeByte(NULL);
+      } else if (value instanceof String) {
+        out.writeByte(STRING);
+        out.writeInt(string((String) value));
+      } else if (value instanceof Boolean) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      } else if (value instanceof Byte) {
+        out.writeByte(BYTE);
+        out.writeByte((Byte) value);
+      } else if (value instanceof Short) {
+        out.writeByte(SHORT);
+        out.writeShort((Short) value);
+      } else if (value instanceof Character) {
+        out.writeByte(CHAR);
+        out.writeChar((Character) value);
+      } else if (value instanceof Integer) {
+        out.writeByte(INT);
+        out.writeInt((Integer) value);
+      } else if (value instanceof Long) {
+        out.writeByte(LONG);
+        out.writeLong((Long) value);
+      } else if (value instanceof Float) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (value instanceof Double) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (value instanceof Enum) {
+        out.writeByte(ENUM);
+        out.writeInt(string(((Enum<?>) value).getDeclaringClass().getName()));
+        out.writeInt(string(((Enum<?>) value).name()));
+      } else if (value instanceof Class && !((Class<?>) value).isPrimitive()) {
+        out.writeByte(CLASS);
+        out.writeInt(string(((Class<?>) value).getName()));
+      } else if (value instanceof ImmutableList) {
+        out.writeByte(LIST);
+        writeValues((ImmutableList<?>) value, out);
+      } else if (value instanceof ImmutableSet && !(value instanceof ImmutableSortedSet)) {
+        out.writeByte(SET);
+        writeValues((ImmutableSet<?>) value, out);
+      } else if (value instanceof ImmutableMap && !(value instanceof ImmutableSortedMap)
+          && !(value instanceof ImmutableBiMap)) {
+        out.writeByte(MAP);
+        ImmutableMap<?, ?> map = (ImmutableMap<?, ?>) value;
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          writeValue(entry.getKey(), out);
+          writeValue(entry.getValue(), out);
+        }
+      } else {
+        Integer node = node(value);
+        if (node != null) {
+          out.writeByte(NODE);
+          out.writeInt(node);
+        } else {
+          out.writeByte(OBJECT);
+          out.writeInt(object(value));
+        }
+      }
+    }
+
+    private void writeValues(Collection<?> values, DataOutput out) throws IOException {
+      out.writeInt(values.size());
+      for (Object value : values) {
+        writeValue(value, out);
+      }
+    }
+
+    private int string(String string) {
+      Integer index = strings.get(string);
+      if (index == null) {
+        index = stringTable.size();
+        strings.put(string, index);
+        stringTable.add(string);
+      }
+      return index;
+    }
+
+    /**
+     * Returns the index of the specified node class, whose properties have the specified names.
+     */
+    private int nodeClass(Class<?> clazz, List<String> propertyNames) {
+      Integer index = classes.get(clazz);
+      if (index == null) {
+        int[] nodeClass = new int[propertyNames.size() + 1];
+        nodeClass[0] = string(clazz.getName());
+        for (int i = 0; i < propertyNames.size(); i++) {
+          nodeClass[i + 1] = string(propertyNames.get(i));
+        }
+        index = classTable.size();
+        classes.put(clazz, index);
+        classTable.add(nodeClass);
+      }
+      return index;
+    }
+
+    private int object(Object object) {
+      List<?> key = Arrays.asList(object.getClass(), object);
+      Integer index = objects.get(key);
+      if (index == null) {
+        index = objectTable.size();
+        objects.put(key, index);
+        objectTable.add(object);
+      }
+      return index;
+    }
+
+    /**
+     * Returns the index of the specified node, writing it and the nodes it refers to if necessary,
+     * or {@code null} if the value is not a node.
+     */
+    @Nullable
+    private Integer node(Object value) throws IOException {
+      Integer index = nodes.get(value);
+      if (index != null) {
+        return index;
+      }
+      if (value instanceof UTypeVar) {
+        UTypeVar typeVar = (UTypeVar) value;
+        index = nodeCount++;
+        nodes.put(typeVar, index);
+        nodeTableOut.writeInt(nodeClass(UTypeVar.class, ImmutableList.<String>of()));
+        nodeTableOut.writeInt(string(typeVar.getName()));
+        // The bounds may refer to the type variable itself, so they follow it in the table.
+        Integer lowerBound = node(typeVar.getLowerBound());
+        Integer upperBound = node(typeVar.getUpperBound());
+        checkArgument(lowerBound != null && upperBound != null,
+            "The bounds of %s cannot be bundled", typeVar);
+        typeVars.add(typeVar);
+        return index;
+      }
+      Class<?> clazz = value.getClass();
+      if (!nodeClasses.containsKey(clazz)) {
+        nodeClasses.put(clazz, NodeClass.of(clazz));
+      }
+      NodeClass nodeClass = nodeClasses.get(clazz);
+      if (nodeClass == null) {
+        return null;
+      }
+      ByteArrayOutputStream record = new ByteArrayOutputStream();
+      DataOutputStream recordOut = new DataOutputStream(record);
+      recordOut.writeInt(nodeClass(clazz, nodeClass.propertyNames()));
+      for (Field field : nodeClass.properties) {
+        try {
+          writeValue(field.get(value), recordOut);
+        } catch (IllegalAccessException e) {
+          throw new AssertionError(e);
+        }
+      }
+      recordOut.flush();
+      ByteBuffer key = ByteBuffer.wrap(record.toByteArray());
+      index = nodesByRecord.get(key);
+      if (index == null) {
+        index = nodeCount++;
+        nodesByRecord.put(key, index);
+        record.writeTo(nodeTableOut);
+      }
+      nodes.put(value, index);
+      return index;
+    }
+  }
+
+  /**
+   * Reads a body written by a {@link Writer}: first its tables, and then the values referring to
+   * them, in the order they were written.
+   */
+  static final class Reader {
+    /**
+     * Reads the tables of a body written by {@link Writer#writeTo} from the specified stream,
+     * which is left positioned just after the body.
+     */
+    static Reader readFrom(DataInput in) throws IOException {
+      int length = in.readInt();
+      if (length < 0) {
+        throw new IOException("Invalid Refaster rule bundle");
+      }
+      byte[] deflated = new byte[length];
+      in.readFully(deflated);
+      byte[] body;
+      Inflater inflater = new Inflater();
+      try {
+        body = ByteStreams.toByteArray(
+            new InflaterInputStream(new ByteArrayInputStream(deflated), inflater));
+      } finally {
+        inflater.end();
+      }
+      DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+      try {
+        return new Reader(bodyIn);
+      } catch (ReflectiveOperationException | ClassCastException | IllegalArgumentException
+          | IndexOutOfBoundsException | NegativeArraySizeException e) {
+        throw new IOException("Invalid Refaster rule bundle", e);
+      }
+    }
+
+    private final DataInput in;
+    private final String[] strings;
+    private final List<?> objects;
+    private final Object[] nodes;
+
+    private Reader(DataInput in) throws IOException, ReflectiveOperationException {
+      this.in = in;
+      strings = new String[in.readInt()];
+      for (int i = 0; i < strings.length; i++) {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        strings[i] = new String(bytes, Charsets.UTF_8);
+      }
+
+      byte[] serialized = new byte[in.readInt()];
+      in.readFully(serialized);
+      ObjectInputStream objectsIn =
+          new ObjectInputStream(new ByteArrayInputStream(serialized));
+      objects = (List<?>) objectsIn.readObject();
+
+      // null for UTypeVar, whose nodes are written by name
+      NodeClass[] classes = new NodeClass[in.readInt()];
+      for (int i = 0; i < classes.length; i++) {
+        String className = strings[in.readInt()];
+        String[] propertyNames = new String[in.readInt()];
+        for (int j = 0; j < propertyNames.length; j++) {
+          propertyNames[j] = strings[in.readInt()];
+        }
+        if (!className.equals(UTypeVar.class.getName())) {
+          classes[i] = NodeClass.of(Class.forName(className));
+          if (classes[i] == null) {
+            throw new IOException(
+                "Invalid Refaster rule bundle: " + className + " is not a node class");
+          } else if (!classes[i].propertyNames().equals(Arrays.asList(propertyNames))) {
+            throw new IOException(String.format(
+                "Refaster rule bundle has properties %s of %s, which now has properties %s",
+                Arrays.asList(propertyNames), className, classes[i].propertyNames()));
+          }
+        }
+      }
+
+      nodes = new Object[in.readInt()];
+      for (int i = 0; i < nodes.length; i++) {
+        NodeClass nodeClass = classes[in.readInt()];
+        if (nodeClass == null) {
+          nodes[i] = UTypeVar.create(strings[in.readInt()]);
+        } else {
+          Object[] values = new Object[nodeClass.properties.size()];
+          for (int j = 0; j < values.length; j++) {
+            values[j] = readValue(in, i);
+          }
+          nodes[i] = nodeClass.newInstance(values);
+        }
+      }
+      int typeVarCount = in.readInt();
+      for (int i = 0; i < typeVarCount; i++) {
+        UTypeVar typeVar = (UTypeVar) nodes[in.readInt()];
+        typeVar.setLowerBound((UType) nodes[in.readInt()]);
+        typeVar.setUpperBound((UType) nodes[in.readInt()]);
+      }
+    }
+
+    /**
+     * Reads the next value, which must be an instance of the specified class or {@code null}.
+     */
+    @Nullable
+    <T> T read(Class<T> clazz) throws IOException {
+      try {
+        return clazz.cast(readValue(in, nodes.length));
+      } catch (ReflectiveOperationException | ClassCastException | IllegalArgumentException
+          | IndexOutOfBoundsException | NegativeArraySizeException e) {
+        throw new IOException("Invalid Refaster rule bundle", e);
+      }
+    }
+
+    /**
+     * Reads a value which may only refer to nodes before the specified index.
+     */
+    private Object readValue(DataInput in, int nodeLimit)
+        throws IOException, ReflectiveOperationException {
+      byte tag = in.readByte();
+      switch (tag) {
+        case NULL:
+          return null;
+        case NODE:
+          int node = in.readInt();
+          if (node >= nodeLimit) {
+            throw new IOException("Invalid Refaster rule bundle: forward reference to " + node);
+          }
+          return nodes[node];
+        case STRING:
+          return strings[in.readInt()];
+        case OBJECT:
+          return objects.get(in.readInt());
+        case BOOLEAN:
+          return in.readBoolean();
+        case BYTE:
+          return in.readByte();
+        case SHORT:
+          return in.readShort();
+        case CHAR:
+          return in.readChar();
+        case INT:
+          return in.readInt();
+        case LONG:
+          return in.readLong();
+        case FLOAT:
+          return in.readFloat();
+        case DOUBLE:
+          return in.readDouble();
+        case ENUM:
+          return enumConstant(Class.forName(strings[in.readInt()]), strings[in.readInt()]);
+        case CLASS:
+          return Class.forName(strings[in.readInt()]);
+        case LIST:
+          return ImmutableList.copyOf(readValues(in, nodeLimit));
+        case SET:
+          return ImmutableSet.copyOf(readValues(in, nodeLimit));
+        case MAP:
+          int size = in.readInt();
+          ImmutableMap.Builder<Object, Object> map = ImmutableMap.builder();
+          for (int i = 0; i < size; i++) {
+            map.put(readValue(in, nodeLimit), readValue(in, nodeLimit));
+          }
+          return map.build();
+        default:
+          throw new IOException("Invalid Refaster rule bundle: unknown tag " + tag);
+      }
+    }
+
+    private Object[] readValues(DataInput in, int nodeLimit)
+        throws IOException, ReflectiveOperationException {
+      Object[] values = new Object[in.readInt()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = readValue(in, nodeLimit);
+      }
+      return values;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(Class<?> enumClass, String name) {
+      return Enum.valueOf((Class) enumClass.asSubclass(Enum.class), name);
+    }
+  }
+}
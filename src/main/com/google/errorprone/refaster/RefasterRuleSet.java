@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableClassToInstanceMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.DescriptionListener;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * A collection of Refaster rules applied together, visiting each tree of a compilation unit only
+ * once and trying every rule applicable to that tree.
+ */
+@AutoValue
+public abstract class RefasterRuleSet implements CodeTransformer, Serializable {
+  public static RefasterRuleSet create(Iterable<? extends RefasterRule<?, ?>> rules) {
+    ImmutableList<RefasterRule<?, ?>> ruleList = ImmutableList.copyOf(rules);
+    ImmutableSet.Builder<String> templateClasses = ImmutableSet.builder();
+    for (RefasterRule<?, ?> rule : ruleList) {
+      templateClasses.add(rule.qualifiedTemplateClass());
+    }
+    return new AutoValue_RefasterRuleSet(ruleList, templateClasses.build());
+  }
+
+  private static ImmutableList<Template<?>> beforeTemplates(
+      List<TemplateIndex.Entry<?, ?>> entries) {
+    ImmutableList.Builder<Template<?>> templates = ImmutableList.builder();
+    for (TemplateIndex.Entry<?, ?> entry : entries) {
+      templates.add(entry.template());
+    }
+    return templates.build();
+  }
+
+  /**
+   * The before templates of the rules in this set, and their index, which are not serialized with
+   * the rule set.
+   */
+  @Nullable private transient volatile Indexed indexed;
+
+  RefasterRuleSet() {}
+
+  abstract ImmutableList<RefasterRule<?, ?>> rules();
+
+  private static final class Indexed {
+    final ImmutableList<TemplateIndex.Entry<?, ?>> templates;
+
+    /**
+     * An index of {@link #templates}, used to find the templates that could possibly match each
+     * tree.
+     */
+    final TemplateIndex index;
+
+    Indexed(ImmutableList<TemplateIndex.Entry<?, ?>> templates) {
+      this.templates = templates;
+      this.index = TemplateIndex.create(beforeTemplates(templates));
+    }
+  }
+
+  private Indexed indexed() {
+    Indexed result = indexed;
+    if (result == null) {
+      indexed = result = new Indexed(TemplateIndex.entries(rules()));
+    }
+    return result;
+  }
+
+  /**
+   * The qualified names of the template classes of the rules in this set.
+   */
+  abstract ImmutableSet<String> templateClasses();
+
+  @Override
+  public void apply(CompilationUnitTree tree, Context context, DescriptionListener listener) {
+    Indexed indexed = indexed();
+    BitSet applicableTemplates =
+        indexed.index.applicableTemplates(ReferencedIdentifiers.in(tree));
+    if (!applicableTemplates.isEmpty()) {
+      RefasterScanner.create(indexed.index, indexed.templates, applicableTemplates,
+          templateClasses(), (JCCompilationUnit) tree, context, listener)
+          .scan(new TreePath(tree), null);
+    }
+  }
+
+  @Override
+  public ImmutableClassToInstanceMap<Annotation> annotations() {
+    return ImmutableClassToInstanceMap.<Annotation>builder().build();
+  }
+
+  @Override
+  public String toString() {
+    return rules().toString();
+  }
+}
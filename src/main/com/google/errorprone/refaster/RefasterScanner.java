@@ -16,126 +16,262 @@
 
 package com.google.errorprone.refaster;
 
-import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import com.google.errorprone.BugPattern.SeverityLevel;
 import com.google.errorprone.DescriptionListener;
 import com.google.errorprone.fixes.Fix;
 import com.google.errorprone.fixes.SuggestedFix;
 import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RuleStatistics.Counter;
+import com.google.errorprone.refaster.RuleStatistics.Phase;
 import com.google.errorprone.util.ASTHelpers;
 
 import com.sun.source.tree.ClassTree;
-import com.sun.source.tree.DoWhileLoopTree;
-import com.sun.source.tree.IfTree;
-import com.sun.source.tree.ParenthesizedTree;
-import com.sun.source.tree.SynchronizedTree;
 import com.sun.source.tree.Tree;
-import com.sun.source.tree.WhileLoopTree;
-import com.sun.source.util.SimpleTreeVisitor;
-import com.sun.source.util.TreeScanner;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
 import com.sun.tools.javac.util.Context;
 
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
 /**
- * Scanner that outputs suggested fixes generated by a {@code RefasterMatcher}.
+ * Scanner that outputs suggested fixes generated by a collection of Refaster rules, visiting each
+ * tree of the compilation unit once.
  * 
  * @author lowasser@google.com (Louis Wasserman)
  */
-@AutoValue
-abstract class RefasterScanner<M extends TemplateMatch, T extends Template<M>> 
-    extends TreeScanner<Void, Context> {
-  static <M extends TemplateMatch, T extends Template<M>> RefasterScanner<M, T> create(
-      RefasterRule<M, T> rule, DescriptionListener listener) {
-    return new AutoValue_RefasterScanner<>(rule, listener);
+final class RefasterScanner extends TreePathScanner<Void, Void> {
+  static RefasterScanner create(TemplateIndex index,
+      List<? extends TemplateIndex.Entry<?, ?>> templates, BitSet applicableTemplates,
+      Set<String> templateClasses, JCCompilationUnit compilationUnit, Context context,
+      DescriptionListener listener) {
+    return new RefasterScanner(index, templates, applicableTemplates, templateClasses,
+        compilationUnit, context, listener);
   }
-  
-  abstract RefasterRule<M, T> rule();
 
-  abstract DescriptionListener listener();
+  private final TemplateIndex index;
+
+  /**
+   * The templates indexed by {@link #index}.  Only the templates tried on some tree are retrieved
+   * from this list.
+   */
+  private final List<? extends TemplateIndex.Entry<?, ?>> templates;
+
+  /**
+   * The positions of the templates worth trying anywhere in this compilation unit.
+   */
+  private final BitSet applicableTemplates;
+  private final Set<String> templateClasses;
+  private final JCCompilationUnit compilationUnit;
+
+  /**
+   * The context shared by all rules applied to this compilation unit, holding the
+   * {@link MatcherState} positioned by each match and the caches specific to this compilation
+   * unit, so that compilation units can be scanned concurrently.
+   */
+  private final Context context;
+  private final DescriptionListener listener;
+
+  /**
+   * The context for each rule applied so far, lazily prepared since most rules never apply to
+   * most compilation units.
+   */
+  private final Map<RefasterRule<?, ?>, Context> ruleContexts;
+
+  /**
+   * Rules are never applied inside their own template class; this contains the template classes
+   * currently being scanned.
+   */
+  private final Set<String> excludedTemplateClasses;
+
+  /**
+   * The listener for the statistics of each rule, or {@code null} if none is bound, in which case
+   * no statistics are gathered.
+   */
+  @Nullable private final RuleStatisticsListener statistics;
+  @Nullable private final TypecheckStatistics typecheckStatistics;
+
+  /**
+   * The rules tried so far on the tree being scanned, if statistics are gathered.
+   */
+  private final Set<RefasterRule<?, ?>> visitedRules;
+
+  private RefasterScanner(TemplateIndex index,
+      List<? extends TemplateIndex.Entry<?, ?>> templates, BitSet applicableTemplates,
+      Set<String> templateClasses, JCCompilationUnit compilationUnit, Context context,
+      DescriptionListener listener) {
+    this.index = index;
+    this.templates = templates;
+    this.applicableTemplates = applicableTemplates;
+    this.templateClasses = templateClasses;
+    this.compilationUnit = compilationUnit;
+    this.context = new SubContext(context);
+    MatcherState.instance(this.context);
+    SourceTextCache.register(this.context);
+    CommentIndex.register(this.context);
+    ParentMap.register(this.context);
+    this.listener = listener;
+    this.ruleContexts = new IdentityHashMap<>();
+    this.excludedTemplateClasses = new HashSet<>();
+    this.statistics = RuleStatistics.listener(context);
+    if (statistics == null) {
+      this.typecheckStatistics = null;
+    } else {
+      this.typecheckStatistics = new TypecheckStatistics();
+      this.context.put(TypecheckStatistics.class, typecheckStatistics);
+    }
+    this.visitedRules =
+        Collections.newSetFromMap(new IdentityHashMap<RefasterRule<?, ?>, Boolean>());
+  }
   
   @Override
-  public Void visitClass(ClassTree node, Context context) {
+  public Void visitClass(ClassTree node, Void v) {
     Symbol sym = ASTHelpers.getSymbol(node);
-    if (sym == null || !sym.getQualifiedName().contentEquals(rule().qualifiedTemplateClass())) {
-      return super.visitClass(node, context);
-    } else {
-      return null;
+    if (sym == null) {
+      return super.visitClass(node, v);
+    }
+    String qualifiedName = sym.getQualifiedName().toString();
+    if (!templateClasses.contains(qualifiedName)) {
+      return super.visitClass(node, v);
     }
+    excludedTemplateClasses.add(qualifiedName);
+    super.visitClass(node, v);
+    excludedTemplateClasses.remove(qualifiedName);
+    return null;
   }
 
   @Override
-  public Void scan(Tree tree, Context context) {
+  public Void scan(Tree tree, Void v) {
     if (tree == null) {
       return null;
     }
-    JCCompilationUnit compilationUnit = context.get(JCCompilationUnit.class);
-    for (T beforeTemplate : rule().beforeTemplates()) {
-      for (M match : beforeTemplate.match((JCTree) tree, context)) {
-        if (rule().rejectMatchesWithComments()) {
-          String matchContents = match.getRange(compilationUnit);
-          if (matchContents.contains("//") || matchContents.contains("/*")) {
-            continue;
+    if (!isObligatoryParens(tree, getCurrentPath())) {
+      BitSet candidates = index.candidates(tree, applicableTemplates);
+      // Most trees have no candidates, so their path is only built by TreePathScanner.
+      TreePath path = candidates.isEmpty() ? null : new TreePath(getCurrentPath(), tree);
+      for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+        TemplateIndex.Entry<?, ?> entry = templates.get(i);
+        if (!excludedTemplateClasses.contains(entry.rule().qualifiedTemplateClass())) {
+          if (statistics != null && visitedRules.add(entry.rule())) {
+            statistics.onCount(entry.rule().qualifiedTemplateClass(), Counter.NODES_VISITED, 1);
           }
+          match(entry, path);
         }
-        Fix fix;
-        if (rule().afterTemplate() == null) {
-          fix = SuggestedFix.delete(match.getLocation());
-        } else {
-          fix = rule().afterTemplate().replace(match);
-        }
-        listener().onDescribed(new Description(
-            match.getLocation(), rule().qualifiedTemplateClass(), fix, SeverityLevel.WARNING));
       }
+      visitedRules.clear();
     }
-    return super.scan(tree, context);
+    return super.scan(tree, v);
   }
-  
-  private static final SimpleTreeVisitor<Tree, Void> SKIP_PARENS =
-      new SimpleTreeVisitor<Tree, Void>() {
-        @Override
-        public Tree visitParenthesized(ParenthesizedTree node, Void v) {
-          return node.getExpression().accept(this, null);
-        }
 
-        @Override
-        protected Tree defaultAction(Tree node, Void v) {
-          return node;
+  private <M extends TemplateMatch, T extends Template<M>> void match(
+      TemplateIndex.Entry<M, T> entry, TreePath path) {
+    RefasterRule<M, T> rule = entry.rule();
+    String name = rule.qualifiedTemplateClass();
+    Iterable<M> matches;
+    if (statistics == null) {
+      matches = entry.template().match(path, contextFor(rule));
+    } else {
+      Context ruleContext = contextFor(rule);
+      typecheckStatistics.reset();
+      long start = System.nanoTime();
+      matches = entry.template().match(path, ruleContext);
+      long elapsed = System.nanoTime() - start;
+      statistics.onCount(name, Counter.TEMPLATES_ATTEMPTED, 1);
+      statistics.onCount(name, Counter.UNIFICATIONS, typecheckStatistics.unifications());
+      statistics.onCount(name, Counter.TYPECHECKS, typecheckStatistics.successes());
+      statistics.onTime(name, Phase.UNIFY, elapsed - typecheckStatistics.nanos());
+      statistics.onTime(name, Phase.TYPECHECK, typecheckStatistics.nanos());
+    }
+    for (M match : matches) {
+      if (rule.rejectMatchesWithComments() && containsComment(match)) {
+        if (statistics != null) {
+          statistics.onCount(name, Counter.COMMENT_REJECTIONS, 1);
+        }
+        continue;
+      }
+      long start = (statistics == null) ? 0 : System.nanoTime();
+      Fix fix;
+      if (rule.afterTemplate() == null) {
+        fix = deletion(rule, match);
+      } else {
+        synchronized (SubContext.javacLock(context)) {
+          fix = rule.afterTemplate().replace(match);
         }
-      };
+      }
+      if (statistics != null) {
+        statistics.onTime(name, Phase.REPLACE, System.nanoTime() - start);
+        statistics.onCount(name, Counter.FIXES, 1);
+      }
+      listener.onDescribed(new Description(
+          match.getLocation(), name, fix, SeverityLevel.WARNING));
+    }
+  }
 
-  /* 
-   * Matching on the parentheses surrounding the condition of an if, while, or do-while
-   * is nonsensical, as those parentheses are obligatory and should never be changed.
+  /**
+   * Returns a fix deleting the specified match, leaving only those of its comments that the rule
+   * preserves.
    */
-
-  @Override
-  public Void visitDoWhileLoop(DoWhileLoopTree node, Context context) {
-    scan(node.getStatement(), context);
-    scan(SKIP_PARENS.visit(node.getCondition(), null), context);
-    return null;
+  private Fix deletion(RefasterRule<?, ?> rule, TemplateMatch match) {
+    List<? extends JCTree> trees = (match instanceof BlockTemplateMatch)
+        ? ((BlockTemplateMatch) match).getStatements()
+        : ImmutableList.of(match.getLocation());
+    String comments = rule.commentPolicy().preservedComments(contextFor(rule), trees);
+    SuggestedFix.Builder fix = SuggestedFix.builder();
+    if (comments.isEmpty()) {
+      fix.delete(trees.get(0));
+    } else {
+      fix.replace(trees.get(0), comments.trim());
+    }
+    for (JCTree tree : trees.subList(1, trees.size())) {
+      fix.delete(tree);
+    }
+    return fix.build();
   }
 
-  @Override
-  public Void visitWhileLoop(WhileLoopTree node, Context context) {
-    scan(SKIP_PARENS.visit(node.getCondition(), null), context);
-    scan(node.getStatement(), context);
-    return null;
+  private boolean containsComment(TemplateMatch match) {
+    return CommentIndex.instance(context).containsComment(compilationUnit,
+        match.getStartPosition(), match.getEndPosition(compilationUnit));
   }
 
-  @Override
-  public Void visitSynchronized(SynchronizedTree node, Context context) {
-    scan(SKIP_PARENS.visit(node.getExpression(), null), context);
-    scan(node.getBlock(), context);
-    return null;
+  private Context contextFor(RefasterRule<?, ?> rule) {
+    Context ruleContext = ruleContexts.get(rule);
+    if (ruleContext == null) {
+      ruleContext = rule.prepareContext(context, compilationUnit);
+      ruleContexts.put(rule, ruleContext);
+    }
+    return ruleContext;
   }
-
-  @Override
-  public Void visitIf(IfTree node, Context context) {
-    scan(SKIP_PARENS.visit(node.getCondition(), null), context);
-    scan(node.getThenStatement(), context);
-    scan(node.getElseStatement(), context);
-    return null;
+  
+  /*
+   * Matching on the parentheses surrounding the condition of an if, while, or do-while
+   * is nonsensical, as those parentheses are obligatory and should never be changed.
+   */
+  private static boolean isObligatoryParens(Tree tree, TreePath parent) {
+    if (tree.getKind() != Kind.PARENTHESIZED) {
+      return false;
+    }
+    switch (parent.getLeaf().getKind()) {
+      case DO_WHILE_LOOP:
+      case WHILE_LOOP:
+      case SYNCHRONIZED:
+      case IF:
+        return true;
+      case PARENTHESIZED:
+        return isObligatoryParens(parent.getLeaf(), parent.getParentPath());
+      default:
+        return false;
+    }
   }
 }
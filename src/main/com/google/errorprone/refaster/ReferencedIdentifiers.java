@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.common.collect.ImmutableSet;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Cheap identifier-based prefilter for Refaster templates.  A template naming a concrete member or
+ * class can only match code that mentions that member or class by its simple name, so a rule may
+ * be skipped for any compilation unit that does not reference all of its required identifiers.
+ */
+final class ReferencedIdentifiers {
+  private ReferencedIdentifiers() {}
+
+  /**
+   * Returns the simple names every tree matched by the specified template tree must reference.
+   */
+  static ImmutableSet<String> requiredBy(UTree<?> template) {
+    RequirementScanner scanner = new RequirementScanner();
+    scanner.scan(template, null);
+    return ImmutableSet.copyOf(scanner.required);
+  }
+
+  /**
+   * Returns the simple names of all identifiers and member selects in the specified tree.
+   */
+  static ImmutableSet<String> in(Tree tree) {
+    Set<String> referenced = new HashSet<>();
+    new ReferenceScanner().scan(tree, referenced);
+    return ImmutableSet.copyOf(referenced);
+  }
+
+  private static final class RequirementScanner extends TreeScanner<Void, Void> {
+    private final Set<String> required = new HashSet<>();
+
+    @Override
+    public Void scan(Tree tree, Void v) {
+      if (tree instanceof UAnyOf) {
+        // only the identifiers required by every alternative are required overall
+        Set<String> common = null;
+        for (UExpression alternative : ((UAnyOf) tree).expressions()) {
+          if (common == null) {
+            common = new HashSet<>(requiredBy(alternative));
+          } else {
+            common.retainAll(requiredBy(alternative));
+          }
+        }
+        if (common != null) {
+          required.addAll(common);
+        }
+        return null;
+      } else if (tree instanceof UMatches) {
+        return scan(((UMatches) tree).expression(), v);
+      } else if (tree instanceof UOfKind) {
+        return scan(((UOfKind) tree).expression(), v);
+      } else if (tree instanceof URepeated) {
+        // may match zero expressions
+        return null;
+      }
+      return super.scan(tree, v);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree node, Void v) {
+      if (node instanceof UStaticIdent) {
+        // the class may be statically imported, so only the member name is required
+        required.add(((UStaticIdent) node).member());
+      } else if (node instanceof UClassIdent) {
+        String qualifiedName = ((UClassIdent) node).getQualifiedName();
+        required.add(qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1));
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree node, Void v) {
+      if (node instanceof UMemberSelect) {
+        required.add(((UMemberSelect) node).identifier());
+      }
+      return super.visitMemberSelect(node, v);
+    }
+
+    @Override
+    public Void visitVariable(VariableTree node, Void v) {
+      return scan(node.getInitializer(), v);
+    }
+
+    @Override
+    public Void visitClass(ClassTree node, Void v) {
+      // be conservative about the contents of anonymous classes
+      return null;
+    }
+  }
+
+  private static final class ReferenceScanner extends TreeScanner<Void, Set<String>> {
+    @Override
+    public Void visitIdentifier(IdentifierTree node, Set<String> referenced) {
+      referenced.add(node.getName().toString());
+      return null;
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree node, Set<String> referenced) {
+      referenced.add(node.getIdentifier().toString());
+      return super.visitMemberSelect(node, referenced);
+    }
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.common.collect.ImmutableClassToInstanceMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.errorprone.DescriptionListener;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import javax.annotation.Nullable;
+
+/**
+ * A manifest of a collection of Refaster rules, holding a {@link TemplateIndex} of all their
+ * before templates together with each rule in precompiled form.
+ *
+ * <p>As a {@code CodeTransformer}, a {@code RuleIndex} only deserializes a rule the first time one
+ * of its templates is a candidate for some tree of a compilation unit referencing all the
+ * identifiers the template requires, so that the cost of loading rules scales with the rules
+ * relevant to the code being refactored rather than with the size of the collection.
+ *
+ * <p>An index is written as a magic number, a format version and the number of rules, followed by
+ * a {@linkplain RefasterRuleBundle bundle} body holding the template class and first template of
+ * each rule and the {@code TemplateIndex}, a table of the offset of each rule, and finally the
+ * rules themselves, each as a separate single-rule bundle.  Reading an index only decodes its
+ * body; each rule is decoded from its own slice of the stream when it is first needed.
+ */
+public final class RuleIndex implements CodeTransformer {
+  private static final int MAGIC = 0x52465249; // "RFRI"
+
+  /**
+   * The version of the index format, which must be incremented whenever the format changes.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * Returns an index of the specified rules, for writing with {@link #write} when the rules are
+   * built.
+   */
+  public static RuleIndex create(Iterable<? extends RefasterRule<?, ?>> rules)
+      throws IOException {
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    ImmutableList.Builder<Template<?>> templates = ImmutableList.builder();
+    int templateCount = 0;
+    for (RefasterRule<?, ?> rule : rules) {
+      ByteArrayOutputStream serializedRule = new ByteArrayOutputStream();
+      RefasterRuleBundle.write(ImmutableList.of(rule), serializedRule);
+      entries.add(new Entry(rule.qualifiedTemplateClass(), templateCount,
+          serializedRule.toByteArray(), 0, serializedRule.size()));
+      templates.addAll(rule.beforeTemplates());
+      templateCount += rule.beforeTemplates().size();
+    }
+    return new RuleIndex(entries.build(), TemplateIndex.create(templates.build()));
+  }
+
+  /**
+   * Reads an index written by {@link #write} from the specified stream, which is not closed, and
+   * is left positioned just after the index.
+   *
+   * @throws IOException if the stream does not contain an index in the current format
+   */
+  public static RuleIndex read(InputStream in) throws IOException {
+    DataInputStream header = new DataInputStream(in);
+    if (header.readInt() != MAGIC) {
+      throw new IOException("Not a Refaster rule index");
+    }
+    int version = header.readInt();
+    if (version != VERSION) {
+      throw new IOException(String.format(
+          "Unsupported Refaster rule index version %d; expected %d", version, VERSION));
+    }
+    int size = header.readInt();
+    if (size < 0) {
+      throw new IOException("Invalid Refaster rule index");
+    }
+
+    RefasterRuleBundle.Reader reader = RefasterRuleBundle.Reader.readFrom(header);
+    String[] qualifiedTemplateClasses = new String[size];
+    int[] firstTemplates = new int[size];
+    for (int i = 0; i < size; i++) {
+      qualifiedTemplateClasses[i] = reader.read(String.class);
+      Integer firstTemplate = reader.read(Integer.class);
+      if (qualifiedTemplateClasses[i] == null || firstTemplate == null) {
+        throw new IOException("Invalid Refaster rule index");
+      }
+      firstTemplates[i] = firstTemplate;
+    }
+    TemplateIndex index = TemplateIndex.read(reader);
+
+    // The offset of each rule within the rules, followed by the length of all of them.
+    int[] offsets = new int[size + 1];
+    for (int i = 0; i <= size; i++) {
+      offsets[i] = header.readInt();
+      if (i == 0 ? offsets[i] != 0 : offsets[i] < offsets[i - 1]) {
+        throw new IOException("Invalid Refaster rule index");
+      }
+    }
+    byte[] serializedRules = new byte[offsets[size]];
+    header.readFully(serializedRules);
+
+    if (size == 0 && index.size() != 0) {
+      throw new IOException("Invalid Refaster rule index");
+    }
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    for (int i = 0; i < size; i++) {
+      if ((i == 0 ? firstTemplates[i] != 0 : firstTemplates[i] < firstTemplates[i - 1])
+          || firstTemplates[i] > index.size()) {
+        throw new IOException("Invalid Refaster rule index");
+      }
+      entries.add(new Entry(qualifiedTemplateClasses[i], firstTemplates[i], serializedRules,
+          offsets[i], offsets[i + 1] - offsets[i]));
+    }
+    return new RuleIndex(entries.build(), index);
+  }
+
+  /**
+   * A single rule of the index.
+   */
+  private static final class Entry {
+    final String qualifiedTemplateClass;
+
+    /**
+     * The position in the {@link TemplateIndex} of the first before template of the rule.
+     */
+    final int firstTemplate;
+
+    /**
+     * The rule, as a single-rule {@link RefasterRuleBundle} in {@code length} bytes of
+     * {@code serializedRules} starting at {@code offset}.
+     */
+    private final byte[] serializedRules;
+    private final int offset;
+    private final int length;
+
+    @Nullable private ImmutableList<TemplateIndex.Entry<?, ?>> templates;
+
+    Entry(String qualifiedTemplateClass, int firstTemplate, byte[] serializedRules, int offset,
+        int length) {
+      this.qualifiedTemplateClass = qualifiedTemplateClass;
+      this.firstTemplate = firstTemplate;
+      this.serializedRules = serializedRules;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    void writeRule(OutputStream out) throws IOException {
+      out.write(serializedRules, offset, length);
+    }
+
+    /**
+     * Returns the before templates of the rule, deserializing it the first time it is needed.
+     */
+    synchronized ImmutableList<TemplateIndex.Entry<?, ?>> templates() {
+      if (templates == null) {
+        try {
+          RefasterRule<?, ?> rule = (RefasterRule<?, ?>) Iterables.getOnlyElement(
+              RefasterRuleBundle.read(new ByteArrayInputStream(serializedRules, offset, length)));
+          templates = TemplateIndex.entries(ImmutableList.of(rule));
+        } catch (IOException | ClassCastException | IllegalArgumentException e) {
+          throw new IllegalStateException(
+              "Could not load the Refaster rule " + qualifiedTemplateClass, e);
+        }
+      }
+      return templates;
+    }
+
+    synchronized boolean isLoaded() {
+      return templates != null;
+    }
+  }
+
+  private final ImmutableList<Entry> entries;
+  private final TemplateIndex index;
+
+  /**
+   * The position in {@link #entries} of the rule of each template in {@link #index}.
+   */
+  private final int[] ruleOfTemplate;
+
+  private final ImmutableSet<String> templateClasses;
+
+  private RuleIndex(ImmutableList<Entry> entries, TemplateIndex index) {
+    this.entries = entries;
+    this.index = index;
+    this.ruleOfTemplate = new int[index.size()];
+    for (int rule = 0; rule < entries.size(); rule++) {
+      int end = (rule + 1 < entries.size()) ? entries.get(rule + 1).firstTemplate : index.size();
+      Arrays.fill(ruleOfTemplate, entries.get(rule).firstTemplate, end, rule);
+    }
+    this.templateClasses = ImmutableSet.copyOf(qualifiedTemplateClasses());
+  }
+
+  /**
+   * Writes this index to the specified stream, which is not closed.
+   */
+  public void write(OutputStream out) throws IOException {
+    RefasterRuleBundle.Writer writer = new RefasterRuleBundle.Writer();
+    for (Entry entry : entries) {
+      writer.write(entry.qualifiedTemplateClass);
+      writer.write(entry.firstTemplate);
+    }
+    index.write(writer);
+
+    DataOutputStream header = new DataOutputStream(out);
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION);
+    header.writeInt(entries.size());
+    writer.writeTo(header);
+    int offset = 0;
+    header.writeInt(offset);
+    for (Entry entry : entries) {
+      offset += entry.length;
+      header.writeInt(offset);
+    }
+    for (Entry entry : entries) {
+      entry.writeRule(header);
+    }
+    header.flush();
+  }
+
+  /**
+   * Returns the qualified names of the template classes of the indexed rules.
+   */
+  public ImmutableList<String> qualifiedTemplateClasses() {
+    ImmutableList.Builder<String> result = ImmutableList.builder();
+    for (Entry entry : entries) {
+      result.add(entry.qualifiedTemplateClass);
+    }
+    return result.build();
+  }
+
+  /**
+   * Returns the qualified names of the template classes of the rules deserialized so far.
+   */
+  ImmutableList<String> loadedTemplateClasses() {
+    ImmutableList.Builder<String> result = ImmutableList.builder();
+    for (Entry entry : entries) {
+      if (entry.isLoaded()) {
+        result.add(entry.qualifiedTemplateClass);
+      }
+    }
+    return result.build();
+  }
+
+  @Override
+  public void apply(CompilationUnitTree tree, Context context, DescriptionListener listener) {
+    BitSet applicableTemplates = index.applicableTemplates(ReferencedIdentifiers.in(tree));
+    if (!applicableTemplates.isEmpty()) {
+      RefasterScanner.create(index, new Templates(), applicableTemplates, templateClasses,
+          (JCCompilationUnit) tree, context, listener)
+          .scan(new TreePath(tree), null);
+    }
+  }
+
+  /**
+   * The templates of {@link #index}, deserializing the rule of each template when it is first
+   * retrieved.
+   */
+  private final class Templates extends AbstractList<TemplateIndex.Entry<?, ?>> {
+    @Override
+    public TemplateIndex.Entry<?, ?> get(int index) {
+      Entry entry = entries.get(ruleOfTemplate[index]);
+      return entry.templates().get(index - entry.firstTemplate);
+    }
+
+    @Override
+    public int size() {
+      return ruleOfTemplate.length;
+    }
+  }
+
+  @Override
+  public ImmutableClassToInstanceMap<Annotation> annotations() {
+    return ImmutableClassToInstanceMap.<Annotation>builder().build();
+  }
+}
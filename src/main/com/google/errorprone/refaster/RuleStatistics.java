@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+import com.sun.tools.javac.util.Context;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nullable;
+
+/**
+ * Aggregates, for each Refaster rule, how often it was tried and how long it took, to identify
+ * expensive rules.
+ *
+ * <p>Statistics are only gathered for compilation units transformed with a context in which a
+ * {@link RuleStatisticsListener} is {@linkplain #bind bound}.  Rules are identified by the
+ * qualified names of their template classes.  A {@code RuleStatistics} may be shared between
+ * threads.
+ */
+public final class RuleStatistics implements RuleStatisticsListener {
+  /**
+   * The events counted for each rule.
+   */
+  public enum Counter {
+    /** Trees on which any template of the rule was tried. */
+    NODES_VISITED,
+    /** Attempts to match a template of the rule against a tree. */
+    TEMPLATES_ATTEMPTED,
+    /** Attempts whose trees unified structurally with the template. */
+    UNIFICATIONS,
+    /** Structural unifications which also typechecked. */
+    TYPECHECKS,
+    /** Matches rejected because they contained comments. */
+    COMMENT_REJECTIONS,
+    /** Fixes emitted for matches. */
+    FIXES,
+  }
+
+  /**
+   * The phases of applying a rule which are timed.
+   */
+  public enum Phase {
+    /** Structural unification of templates with trees. */
+    UNIFY,
+    /** Typechecking structural unifications. */
+    TYPECHECK,
+    /** Generating fixes for matches. */
+    REPLACE,
+  }
+
+  /**
+   * Binds the specified listener in the specified context, so that it receives the statistics
+   * of rules applied in that context.
+   */
+  public static void bind(Context context, RuleStatisticsListener listener) {
+    context.put(RuleStatisticsListener.class, checkNotNull(listener));
+  }
+
+  /**
+   * Returns the listener bound in the specified context, or {@code null} if none is.
+   */
+  @Nullable
+  static RuleStatisticsListener listener(Context context) {
+    return context.get(RuleStatisticsListener.class);
+  }
+
+  public static RuleStatistics create() {
+    return new RuleStatistics();
+  }
+
+  private static final int COUNTERS = Counter.values().length;
+
+  /**
+   * For each rule, its counters followed by its phase timings.
+   */
+  private final ConcurrentMap<String, AtomicLongArray> statistics = new ConcurrentHashMap<>();
+
+  private RuleStatistics() {}
+
+  private AtomicLongArray statistics(String rule) {
+    AtomicLongArray result = statistics.get(rule);
+    if (result == null) {
+      AtomicLongArray created = new AtomicLongArray(COUNTERS + Phase.values().length);
+      result = statistics.putIfAbsent(rule, created);
+      if (result == null) {
+        result = created;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void onCount(String rule, Counter counter, long count) {
+    statistics(rule).addAndGet(counter.ordinal(), count);
+  }
+
+  @Override
+  public void onTime(String rule, Phase phase, long nanos) {
+    statistics(rule).addAndGet(COUNTERS + phase.ordinal(), nanos);
+  }
+
+  /**
+   * Returns the rules for which any statistics were recorded.
+   */
+  public ImmutableSortedSet<String> rules() {
+    return ImmutableSortedSet.copyOf(statistics.keySet());
+  }
+
+  public long count(String rule, Counter counter) {
+    AtomicLongArray ruleStatistics = statistics.get(rule);
+    return (ruleStatistics == null) ? 0 : ruleStatistics.get(counter.ordinal());
+  }
+
+  public long time(String rule, Phase phase, TimeUnit unit) {
+    AtomicLongArray ruleStatistics = statistics.get(rule);
+    return (ruleStatistics == null)
+        ? 0
+        : unit.convert(ruleStatistics.get(COUNTERS + phase.ordinal()), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns a table of the statistics of each rule, with times in milliseconds.
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("rule");
+    for (Counter counter : Counter.values()) {
+      builder.append('\t').append(counter.name().toLowerCase(Locale.ROOT));
+    }
+    for (Phase phase : Phase.values()) {
+      builder.append('\t').append(phase.name().toLowerCase(Locale.ROOT)).append("_ms");
+    }
+    for (String rule : rules()) {
+      builder.append('\n').append(rule);
+      for (Counter counter : Counter.values()) {
+        builder.append('\t').append(count(rule, counter));
+      }
+      for (Phase phase : Phase.values()) {
+        builder.append('\t').append(time(rule, phase, TimeUnit.MILLISECONDS));
+      }
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+/**
+ * Receives the statistics of each Refaster rule as it is applied; see {@link RuleStatistics}.
+ * Implementations must be thread-safe if rules are applied on several threads.
+ */
+public interface RuleStatisticsListener {
+  void onCount(String rule, RuleStatistics.Counter counter, long count);
+
+  void onTime(String rule, RuleStatistics.Phase phase, long nanos);
+}
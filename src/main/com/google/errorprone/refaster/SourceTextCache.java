@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+
+import java.io.IOException;
+
+/**
+ * The source text of the compilation unit currently being refactored, read once so that printing
+ * each replacement slices the same text instead of reading and copying the whole file again.
+ */
+final class SourceTextCache extends CompilationUnitCache<String, IOException> {
+  private static final Context.Factory<SourceTextCache> FACTORY =
+      new Context.Factory<SourceTextCache>() {
+        @Override
+        public SourceTextCache make(Context context) {
+          return new SourceTextCache();
+        }
+      };
+
+  static SourceTextCache instance(Context context) {
+    return instance(context, SourceTextCache.class, FACTORY);
+  }
+
+  static SourceTextCache register(Context context) {
+    return register(context, SourceTextCache.class, FACTORY);
+  }
+
+  private SourceTextCache() {}
+
+  /**
+   * Returns the source text of the specified compilation unit.
+   */
+  CharSequence getSourceText(JCCompilationUnit unit) throws IOException {
+    return get(unit);
+  }
+
+  @Override
+  String compute(CompilationUnitTree unit) throws IOException {
+    return unit.getSourceFile().getCharContent(false).toString();
+  }
+}
@@ -18,7 +18,16 @@ package com.google.errorprone.refaster;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.sun.tools.javac.code.Symtab;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.comp.Enter;
+import com.sun.tools.javac.comp.Infer;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.tree.TreeMaker;
 import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Names;
+
+import javax.tools.JavaFileManager;
 
 /**
  * A view on top of a {@code Context} allowing additional modifications to be
@@ -48,5 +57,71 @@ public final class SubContext extends Context {
         ? base.get(clazz)
         : result;
   }
+
+  /**
+   * Returns the {@code Context} underneath any {@code SubContext}s layered on the specified
+   * context, to hold state shared by the whole compilation.
+   */
+  static Context root(Context context) {
+    while (context instanceof SubContext) {
+      context = ((SubContext) context).base;
+    }
+    return context;
+  }
+
+  /**
+   * Returns the instance of the specified class registered in the root of the specified context,
+   * creating it in the root with the specified factory if there is none.  Concurrent callers
+   * sharing a root all get the same instance.
+   *
+   * <p>A {@code Context} is a plain {@code HashMap}, which other threads read without this lock,
+   * so an instance must only be created here while a single thread uses the root.
+   * {@link #prepareRoot} creates every root-scoped instance before compilation units are matched
+   * on several threads.
+   */
+  static <T> T rootInstance(Context context, Class<T> key, Context.Factory<T> factory) {
+    Context root = root(context);
+    synchronized (root) {
+      T result = root.get(key);
+      if (result == null) {
+        result = factory.make(root);
+        root.put(key, result);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Creates, in the root of the specified context, every javac component and root-scoped cache
+   * that applying Refaster rules looks up, so that compilation units sharing the root can then be
+   * matched on several threads which only ever read it.
+   */
+  static void prepareRoot(Context context) {
+    Context root = root(context);
+    synchronized (root) {
+      root.get(JavaFileManager.class);
+      Names.instance(root);
+      Symtab.instance(root);
+      Types.instance(root);
+      TreeMaker.instance(root);
+      Enter.instance(root);
+      Infer.instance(root);
+      JavaCompiler.instance(root);
+      InferenceCache.instance(root);
+      ClassSymbolCache.instance(root);
+    }
+  }
+
+  /**
+   * Returns the lock guarding the javac components of the compilation of the specified context.
+   * javac's {@code Types}, {@code TreeMaker}, type inference and symbol completion are not
+   * thread-safe, so compilation units of the same compilation matched on different threads hold
+   * this lock while using them.  Unifying a type can complete a class symbol, as
+   * {@code ClassType.getTypeArguments()} does, so {@link UType#unify} holds it too; the rest of
+   * structural unification only reads the attributed trees, and runs without it.
+   */
+  static Object javacLock(Context context) {
+    return root(context);
+  }
 }
 
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2026 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Interns templated {@code UTree}s and {@code UType}s by hash-consing, so that identical subtrees
+ * of the templates of all rules are represented by a single object.
+ *
+ * <p>Subtrees are interned bottom-up: the children of a subtree are interned before the subtree
+ * itself, so equal children are already identical.  A subtree is therefore hashed and compared by
+ * its class and the identities of its children, which takes time proportional to its own
+ * properties rather than to its size, and interning a whole template takes linear time.  A child
+ * that was not interned, such as one referring to a template type variable, is only ever
+ * identical to itself, so the subtrees holding it are never merged with other subtrees.
+ */
+final class SubtreeInterner {
+  private SubtreeInterner() {}
+
+  private static final ConcurrentMap<Shape, Object> INTERNED =
+      new MapMaker().weakValues().makeMap();
+
+  /**
+   * The properties of each {@code AutoValue} class of subtrees, or an empty list for classes
+   * that are never interned.
+   */
+  private static final LoadingCache<Class<?>, ImmutableList<Field>> PROPERTIES =
+      CacheBuilder.newBuilder().weakKeys().build(new CacheLoader<Class<?>, ImmutableList<Field>>() {
+        @Override
+        public ImmutableList<Field> load(Class<?> clazz) {
+          if (!clazz.getSimpleName().startsWith("AutoValue_")) {
+            return ImmutableList.of();
+          }
+          ImmutableList.Builder<Field> properties = ImmutableList.builder();
+          for (Field field : clazz.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())
+                && !Modifier.isTransient(field.getModifiers())) {
+              field.setAccessible(true);
+              properties.add(field);
+            }
+          }
+          return properties.build();
+        }
+      });
+
+  /**
+   * Returns the subtree identical to every other interned subtree equal to the specified one,
+   * whose children must have been interned first.
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T intern(T subtree) {
+    ImmutableList<Field> properties = PROPERTIES.getUnchecked(subtree.getClass());
+    if (properties.isEmpty()) {
+      return subtree;
+    }
+    Object[] values = new Object[properties.size()];
+    for (int i = 0; i < values.length; i++) {
+      try {
+        values[i] = properties.get(i).get(subtree);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+    Object existing = INTERNED.putIfAbsent(new Shape(subtree.getClass(), values), subtree);
+    return (existing == null) ? subtree : (T) existing;
+  }
+
+  /**
+   * The class of a subtree and the values of its properties, compared by identity where they are
+   * subtrees themselves.
+   */
+  private static final class Shape {
+    private final Class<?> clazz;
+    private final Object[] values;
+    private final int hashCode;
+
+    Shape(Class<?> clazz, Object[] values) {
+      this.clazz = clazz;
+      this.values = values;
+      int hash = clazz.hashCode();
+      for (Object value : values) {
+        hash = 31 * hash + shallowHash(value);
+      }
+      this.hashCode = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (!(obj instanceof Shape)) {
+        return false;
+      }
+      Shape other = (Shape) obj;
+      if (clazz != other.clazz) {
+        return false;
+      }
+      for (int i = 0; i < values.length; i++) {
+        if (!shallowEquals(values[i], other.values[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static boolean isSubtree(@Nullable Object value) {
+    return value instanceof UTree || value instanceof UType;
+  }
+
+  private static int shallowHash(@Nullable Object value) {
+    if (isSubtree(value)) {
+      return System.identityHashCode(value);
+    } else if (value instanceof List) {
+      int hash = 1;
+      for (Object element : (List<?>) value) {
+        hash = 31 * hash + shallowHash(element);
+      }
+      return hash;
+    }
+    return Objects.hashCode(value);
+  }
+
+  private static boolean shallowEquals(@Nullable Object a, @Nullable Object b) {
+    if (isSubtree(a) || isSubtree(b)) {
+      return a == b;
+    } else if (a instanceof List && b instanceof List) {
+      List<?> list1 = (List<?>) a;
+      List<?> list2 = (List<?>) b;
+      if (list1.size() != list2.size()) {
+        return false;
+      }
+      for (int i = 0; i < list1.size(); i++) {
+        if (!shallowEquals(list1.get(i), list2.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return Objects.equal(a, b);
+  }
+}
@@ -22,12 +22,14 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableClassToInstanceMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.fixes.Fix;
 import com.google.errorprone.fixes.SuggestedFix;
 import com.google.errorprone.refaster.UTypeVar.TypeWithExpression;
 import com.google.errorprone.refaster.annotation.NoAutoboxing;
 
 import com.sun.source.tree.Tree.Kind;
+import com.sun.source.util.TreePath;
 import com.sun.tools.javac.code.Symbol.MethodSymbol;
 import com.sun.tools.javac.code.Symtab;
 import com.sun.tools.javac.code.Type;
@@ -50,7 +52,9 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.io.Writer;
 import java.lang.annotation.Annotation;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
@@ -71,12 +75,42 @@ public abstract class Template<M extends TemplateMatch> implements Serializable
   public abstract ImmutableMap<String, UType> expressionArgumentTypes();
   
   public abstract Iterable<M> match(JCTree tree, Context context);
+
+  /**
+   * Matches this template against the leaf of the specified path.  Any {@code @Matches}
+   * matchers see paths extending the specified path, instead of paths recomputed from the
+   * compilation unit.
+   */
+  public Iterable<M> match(TreePath path, Context context) {
+    MatcherState matcherState = MatcherState.instance(context);
+    matcherState.setMatchPath(path);
+    try {
+      return match((JCTree) path.getLeaf(), context);
+    } finally {
+      matcherState.setMatchPath(null);
+    }
+  }
   public abstract Fix replace(M match);
   
   boolean autoboxing() {
     return !annotations().containsKey(NoAutoboxing.class);
   }
 
+  /**
+   * Returns the kinds of trees this template could possibly match.  Templates are never matched
+   * against trees of other kinds.
+   */
+  Set<Kind> targetKinds() {
+    return EnumSet.allOf(Kind.class);
+  }
+
+  /**
+   * Returns simple names that must be referenced by any code this template matches.
+   */
+  Set<String> requiredIdentifiers() {
+    return ImmutableSet.of();
+  }
+
   /**
    * Returns a list of the expected types of the expression arguments, in order. 
    * (This is equivalent to the list of argument types of the @BeforeTemplate method.)
@@ -138,8 +172,94 @@ public abstract class Template<M extends TemplateMatch> implements Serializable
   @Nullable
   protected Unifier typecheck(Unifier unifier, Inliner inliner, Warner warner,
       List<Type> expectedTypes, List<Type> actualTypes) {
+    TypecheckStatistics statistics = unifier.getContext().get(TypecheckStatistics.class);
+    if (statistics == null) {
+      return typecheckUnrecorded(unifier, inliner, warner, expectedTypes, actualTypes);
+    }
+    long start = System.nanoTime();
+    Unifier result = typecheckUnrecorded(unifier, inliner, warner, expectedTypes, actualTypes);
+    statistics.record(result != null, System.nanoTime() - start);
+    return result;
+  }
+
+  @Nullable
+  private Unifier typecheckUnrecorded(Unifier unifier, Inliner inliner, Warner warner,
+      List<Type> expectedTypes, List<Type> actualTypes) {
     try {
       ImmutableList<UTypeVar> freeTypeVars = freeTypeVars(unifier);
+      if (freeTypeVars.isEmpty()) {
+        // With nothing to infer, inference reduces to checking each argument individually.
+        return argumentsCompatible(inliner.types(), warner, expectedTypes, actualTypes)
+                && checkBounds(unifier, inliner, warner)
+            ? unifier : null;
+      }
+      InferenceCache cache = InferenceCache.instance(inliner.getContext());
+      InferenceCache.Key cacheKey = cache.key(this, boundTypes(unifier), actualTypes);
+      Optional<List<Type>> instantiations = cache.get(cacheKey);
+      if (instantiations == null) {
+        instantiations = 
+            instantiate(freeTypeVars, warner, inliner, expectedTypes, actualTypes);
+        // When the bound of one free type variable refers to another, as in
+        // <K, V extends List<K>>, an instantiation may mention the type variables this inliner
+        // created, which mean nothing to any other inliner.
+        if (!instantiations.isPresent()
+            || !Type.containsAny(instantiations.get(), inliner.createdTypeVars())) {
+          cache.put(cacheKey, instantiations);
+        }
+      }
+      if (!instantiations.isPresent()) {
+        return null;
+      }
+
+      List<Type> instantiationsForVars = instantiations.get();
+      for (UTypeVar var : freeTypeVars) {
+        unifier.putBinding(var.key(), TypeWithExpression.create(instantiationsForVars.head));
+        instantiationsForVars = instantiationsForVars.tail;
+      }
+      
+      if (!checkBounds(unifier, inliner, warner)) {
+        return null;
+      }
+      return unifier;
+    } catch (CouldNotResolveImportException e) {
+      logger.log(FINE, "Failure to resolve an import", e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns whether each actual type could be passed as an argument of the corresponding expected
+   * type, as javac would check for a method with no type variables.
+   */
+  private boolean argumentsCompatible(
+      Types types, Warner warner, List<Type> expectedTypes, List<Type> actualTypes) {
+    for (; expectedTypes.nonEmpty() && actualTypes.nonEmpty(); 
+        expectedTypes = expectedTypes.tail, actualTypes = actualTypes.tail) {
+      Type expected = expectedTypes.head;
+      Type actual = actualTypes.head;
+      if (expected == null || actual == null) {
+        // a repeated argument matching no expressions
+        continue;
+      }
+      boolean compatible = autoboxing()
+          ? types.isConvertible(actual, expected, warner)
+          : types.isSubtypeUnchecked(actual, expected, warner);
+      if (!compatible) {
+        logger.log(FINE, String.format("%s is not compatible with %s", actual, expected));
+        return false;
+      }
+    }
+    return expectedTypes.isEmpty() && actualTypes.isEmpty();
+  }
+
+  /**
+   * Returns the instantiations of the specified free type variables, in order, that allow the
+   * actual types to match the expected types, or {@code Optional.absent()} if there are none.
+   */
+  private Optional<List<Type>> instantiate(ImmutableList<UTypeVar> freeTypeVars, Warner warner,
+      Inliner inliner, List<Type> expectedTypes, List<Type> actualTypes)
+      throws CouldNotResolveImportException {
+    try {
       infer(warner,
           inliner,
           inliner.<Type, UTypeVar>inlineList(freeTypeVars),
@@ -147,6 +267,7 @@ public abstract class Template<M extends TemplateMatch> implements Serializable
           inliner.symtab().voidType,
           actualTypes);
 
+      ListBuffer<Type> instantiations = ListBuffer.lb();
       for (UTypeVar var : freeTypeVars) {
         Type instantiationForVar = infer(warner,
             inliner,
@@ -154,21 +275,26 @@ public abstract class Template<M extends TemplateMatch> implements Serializable
             expectedTypes,
             var.inline(inliner),
             actualTypes);
-        unifier.putBinding(var.key(), 
-            TypeWithExpression.create(instantiationForVar.getReturnType()));
+        instantiations.add(instantiationForVar.getReturnType());
       }
-      
-      if (!checkBounds(unifier, inliner, warner)) {
-        return null;
-      }
-      return unifier;
-    } catch (CouldNotResolveImportException e) {
-      logger.log(FINE, "Failure to resolve an import", e);
-      return null;
+      return Optional.of(instantiations.toList());
     } catch (InferenceException e) {
       logger.log(FINE, "No valid instantiation found: " + e.getDiagnostic());
-      return null;
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * Returns the types bound to the type variables of this template in the specified
+   * {@code Unifier}, in order, with {@code null} for free type variables.
+   */
+  private List<Type> boundTypes(Unifier unifier) {
+    Type[] result = new Type[typeVariables().size()];
+    for (int i = 0; i < result.length; i++) {
+      TypeWithExpression binding = unifier.getBinding(typeVariables().get(i).key());
+      result[i] = (binding == null) ? null : binding.type();
     }
+    return List.from(result);
   }
   
   private boolean checkBounds(Unifier unifier, Inliner inliner, Warner warner)
@@ -197,7 +323,7 @@ public abstract class Template<M extends TemplateMatch> implements Serializable
   protected static Pretty pretty(Context context, final Writer writer) {
     final JCCompilationUnit unit = context.get(JCCompilationUnit.class);
     try {
-      final String unitContents = unit.getSourceFile().getCharContent(false).toString();
+      final CharSequence unitContents = SourceTextCache.instance(context).getSourceText(unit);
       return new Pretty(writer, true) {
         @Override
         public void visitAnnotation(JCAnnotation anno) {
@@ -222,8 +348,8 @@ public abstract class Template<M extends TemplateMatch> implements Serializable
            * handling.
            */
           if (tree.getKind() != Kind.MODIFIERS && endPositions.containsKey(tree)) {
-            writer.append(unitContents.substring(
-                tree.getStartPosition(), tree.getEndPosition(endPositions)));
+            writer.append(
+                unitContents, tree.getStartPosition(), tree.getEndPosition(endPositions));
           } else {
             super.printExpr(tree, prec);
           }
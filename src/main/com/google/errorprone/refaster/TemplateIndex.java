@@ -0,0 +1,448 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.source.tree.UnaryTree;
+import com.sun.tools.javac.util.List;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * A discrimination tree over the before templates of a collection of Refaster rules.
+ *
+ * <p>Each expression template is flattened in preorder to a sequence of keys: operator kinds for
+ * binary and unary expressions, the kind and value of literals, the names of invoked methods and
+ * selected members, and the kinds of other trees that only match trees of their own kind.  Free
+ * variables and any other template trees that could match arbitrary code are wildcards, matching
+ * an entire target subtree.  Walking a target tree down the trie yields only the templates that
+ * could still match it; templates that cannot be keyed at all are indexed by their target kinds.
+ */
+final class TemplateIndex {
+  /**
+   * A before template of a rule.
+   */
+  static final class Entry<M extends TemplateMatch, T extends Template<M>> {
+    private final RefasterRule<M, T> rule;
+    private final T template;
+
+    private Entry(RefasterRule<M, T> rule, T template) {
+      this.rule = rule;
+      this.template = template;
+    }
+
+    RefasterRule<M, T> rule() {
+      return rule;
+    }
+
+    T template() {
+      return template;
+    }
+  }
+
+  private static final class Node {
+    private final Map<Object, Node> children = new HashMap<>();
+    @Nullable private Node wildcard;
+    private final BitSet terminals = new BitSet();
+
+    Node child(@Nullable Object key) {
+      if (key == null) {
+        if (wildcard == null) {
+          wildcard = new Node();
+        }
+        return wildcard;
+      }
+      Node child = children.get(key);
+      if (child == null) {
+        child = new Node();
+        children.put(key, child);
+      }
+      return child;
+    }
+  }
+
+  /**
+   * Returns the before templates of the specified rules, in order.
+   */
+  static ImmutableList<Entry<?, ?>> entries(Iterable<? extends RefasterRule<?, ?>> rules) {
+    ImmutableList.Builder<Entry<?, ?>> entries = ImmutableList.builder();
+    for (RefasterRule<?, ?> rule : rules) {
+      addEntries(rule, entries);
+    }
+    return entries.build();
+  }
+
+  private static <M extends TemplateMatch, T extends Template<M>> void addEntries(
+      RefasterRule<M, T> rule, ImmutableList.Builder<Entry<?, ?>> entries) {
+    for (T template : rule.beforeTemplates()) {
+      entries.add(new Entry<>(rule, template));
+    }
+  }
+
+  /**
+   * Returns an index of the specified templates, which only refers to them by their positions in
+   * the list, so that it can outlive them.
+   */
+  static TemplateIndex create(java.util.List<? extends Template<?>> templates) {
+    return new TemplateIndex(templates);
+  }
+
+  private final ImmutableList<ImmutableSet<Kind>> targetKinds;
+  private final ImmutableList<ImmutableSet<String>> requiredIdentifiers;
+  private final Node root;
+  private final Map<Kind, BitSet> unkeyedByKind;
+
+  private TemplateIndex(java.util.List<? extends Template<?>> templates) {
+    ImmutableList.Builder<ImmutableSet<Kind>> targetKinds = ImmutableList.builder();
+    ImmutableList.Builder<ImmutableSet<String>> requiredIdentifiers = ImmutableList.builder();
+    this.root = new Node();
+    this.unkeyedByKind = new EnumMap<>(Kind.class);
+    for (int i = 0; i < templates.size(); i++) {
+      Template<?> template = templates.get(i);
+      targetKinds.add(ImmutableSet.copyOf(template.targetKinds()));
+      requiredIdentifiers.add(ImmutableSet.copyOf(template.requiredIdentifiers()));
+      if (template instanceof ExpressionTemplate
+          && key(((ExpressionTemplate) template).expression()) != null) {
+        java.util.List<Object> keys = new ArrayList<>();
+        flatten(((ExpressionTemplate) template).expression(), keys);
+        Node node = root;
+        for (Object key : keys) {
+          node = node.child(key);
+        }
+        node.terminals.set(i);
+      } else {
+        for (Kind kind : template.targetKinds()) {
+          BitSet unkeyed = unkeyedByKind.get(kind);
+          if (unkeyed == null) {
+            unkeyed = new BitSet();
+            unkeyedByKind.put(kind, unkeyed);
+          }
+          unkeyed.set(i);
+        }
+      }
+    }
+    this.targetKinds = targetKinds.build();
+    this.requiredIdentifiers = requiredIdentifiers.build();
+  }
+
+  private TemplateIndex(ImmutableList<ImmutableSet<Kind>> targetKinds,
+      ImmutableList<ImmutableSet<String>> requiredIdentifiers, Node root,
+      Map<Kind, BitSet> unkeyedByKind) {
+    this.targetKinds = targetKinds;
+    this.requiredIdentifiers = requiredIdentifiers;
+    this.root = root;
+    this.unkeyedByKind = unkeyedByKind;
+  }
+
+  /**
+   * Writes this index with the specified writer, as {@link #read} reads it: the target kinds and
+   * required identifiers of each template, the trie in preorder, and the unkeyed templates of each
+   * kind.  Sets of template positions are written as lists of positions.
+   */
+  void write(RefasterRuleBundle.Writer writer) throws IOException {
+    writer.write(targetKinds);
+    writer.write(requiredIdentifiers);
+    writeNode(root, writer);
+    writer.write(unkeyedByKind.size());
+    for (Map.Entry<Kind, BitSet> unkeyed : unkeyedByKind.entrySet()) {
+      writer.write(unkeyed.getKey());
+      writer.write(positions(unkeyed.getValue()));
+    }
+  }
+
+  private static void writeNode(Node node, RefasterRuleBundle.Writer writer) throws IOException {
+    writer.write(positions(node.terminals));
+    writer.write(node.children.size());
+    for (Map.Entry<Object, Node> child : node.children.entrySet()) {
+      writer.write(child.getKey());
+      writeNode(child.getValue(), writer);
+    }
+    writer.write(node.wildcard != null);
+    if (node.wildcard != null) {
+      writeNode(node.wildcard, writer);
+    }
+  }
+
+  /**
+   * Reads an index written by {@link #write} with the specified reader.
+   */
+  @SuppressWarnings("unchecked") // checked as far as the bundle format allows
+  static TemplateIndex read(RefasterRuleBundle.Reader reader) throws IOException {
+    ImmutableList<ImmutableSet<Kind>> targetKinds = reader.read(ImmutableList.class);
+    ImmutableList<ImmutableSet<String>> requiredIdentifiers = reader.read(ImmutableList.class);
+    if (targetKinds == null || requiredIdentifiers == null
+        || targetKinds.size() != requiredIdentifiers.size()) {
+      throw new IOException("Invalid Refaster rule index");
+    }
+    Node root = readNode(reader);
+    Map<Kind, BitSet> unkeyedByKind = new EnumMap<>(Kind.class);
+    for (int i = readSize(reader); i > 0; i--) {
+      Kind kind = reader.read(Kind.class);
+      if (kind == null) {
+        throw new IOException("Invalid Refaster rule index");
+      }
+      unkeyedByKind.put(kind, readPositions(reader));
+    }
+    return new TemplateIndex(targetKinds, requiredIdentifiers, root, unkeyedByKind);
+  }
+
+  private static Node readNode(RefasterRuleBundle.Reader reader) throws IOException {
+    Node node = new Node();
+    node.terminals.or(readPositions(reader));
+    for (int i = readSize(reader); i > 0; i--) {
+      Object key = reader.read(ImmutableList.class);
+      if (key == null) {
+        throw new IOException("Invalid Refaster rule index");
+      }
+      node.children.put(key, readNode(reader));
+    }
+    if (Boolean.TRUE.equals(reader.read(Boolean.class))) {
+      node.wildcard = readNode(reader);
+    }
+    return node;
+  }
+
+  private static int readSize(RefasterRuleBundle.Reader reader) throws IOException {
+    Integer size = reader.read(Integer.class);
+    if (size == null || size < 0) {
+      throw new IOException("Invalid Refaster rule index");
+    }
+    return size;
+  }
+
+  private static ImmutableList<Integer> positions(BitSet bits) {
+    ImmutableList.Builder<Integer> positions = ImmutableList.builder();
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+      positions.add(i);
+    }
+    return positions.build();
+  }
+
+  private static BitSet readPositions(RefasterRuleBundle.Reader reader) throws IOException {
+    BitSet bits = new BitSet();
+    ImmutableList<?> positions = reader.read(ImmutableList.class);
+    if (positions == null) {
+      throw new IOException("Invalid Refaster rule index");
+    }
+    for (Object position : positions) {
+      if (!(position instanceof Integer) || (Integer) position < 0) {
+        throw new IOException("Invalid Refaster rule index");
+      }
+      bits.set((Integer) position);
+    }
+    return bits;
+  }
+
+  /**
+   * Returns the number of templates in this index.
+   */
+  int size() {
+    return targetKinds.size();
+  }
+
+  /**
+   * Returns the positions of the templates that could possibly match in a compilation unit
+   * referencing the specified simple names.  Templates requiring an identifier that the
+   * compilation unit never references are skipped without attempting to match them.
+   */
+  BitSet applicableTemplates(Set<String> referencedIdentifiers) {
+    BitSet applicable = new BitSet();
+    for (int i = 0; i < requiredIdentifiers.size(); i++) {
+      if (referencedIdentifiers.containsAll(requiredIdentifiers.get(i))) {
+        applicable.set(i);
+      }
+    }
+    return applicable;
+  }
+
+  /**
+   * Returns the positions of the templates that could possibly match the specified tree, out of
+   * those set in {@code allowed}.
+   */
+  BitSet candidates(Tree tree, BitSet allowed) {
+    BitSet candidates = new BitSet();
+    retrieve(root, List.of(tree), candidates);
+    BitSet unkeyed = unkeyedByKind.get(tree.getKind());
+    if (unkeyed != null) {
+      candidates.or(unkeyed);
+    }
+    candidates.and(allowed);
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      if (!targetKinds.get(i).contains(tree.getKind())) {
+        candidates.clear(i);
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Walks the target subtrees in {@code pending} down the trie from {@code node}, adding the
+   * templates at every node reached once all of them have been consumed.
+   */
+  private static void retrieve(Node node, List<Tree> pending, BitSet result) {
+    if (pending.isEmpty()) {
+      result.or(node.terminals);
+      return;
+    }
+    if (node.wildcard != null) {
+      retrieve(node.wildcard, pending.tail, result);
+    }
+    Tree target = UParens.skipParens(pending.head);
+    Node child = node.children.get(targetKey(target));
+    if (child != null) {
+      List<Tree> remaining = pending.tail;
+      if (target instanceof BinaryTree) {
+        BinaryTree binary = (BinaryTree) target;
+        remaining = remaining.prepend(binary.getRightOperand()).prepend(binary.getLeftOperand());
+      } else if (target instanceof UnaryTree) {
+        remaining = remaining.prepend(((UnaryTree) target).getExpression());
+      }
+      retrieve(child, remaining, result);
+    }
+  }
+
+  private static Object targetKey(Tree target) {
+    switch (target.getKind()) {
+      case IDENTIFIER:
+        return name(((IdentifierTree) target).getName());
+      case MEMBER_SELECT:
+        return name(((MemberSelectTree) target).getIdentifier());
+      case METHOD_INVOCATION:
+        ExpressionTree methodSelect = ((MethodInvocationTree) target).getMethodSelect();
+        switch (methodSelect.getKind()) {
+          case IDENTIFIER:
+            return invocation(((IdentifierTree) methodSelect).getName());
+          case MEMBER_SELECT:
+            return invocation(((MemberSelectTree) methodSelect).getIdentifier());
+          default:
+            return ImmutableList.<Object>of(Kind.METHOD_INVOCATION);
+        }
+      default:
+        if (target instanceof LiteralTree) {
+          return literal(target.getKind(), ((LiteralTree) target).getValue());
+        }
+        return ImmutableList.<Object>of(target.getKind());
+    }
+  }
+
+  /**
+   * Appends the keys of the specified template tree and its keyed descendants in preorder,
+   * using {@code null} for wildcards.
+   */
+  private static void flatten(UTree<?> template, java.util.List<Object> keys) {
+    template = skipTransparent(template);
+    Object key = key(template);
+    keys.add(key);
+    if (key == null) {
+      return;
+    } else if (template instanceof UBinary) {
+      flatten(((UBinary) template).getLeftOperand(), keys);
+      flatten(((UBinary) template).getRightOperand(), keys);
+    } else if (template instanceof UUnary) {
+      flatten(((UUnary) template).getExpression(), keys);
+    }
+  }
+
+  /**
+   * Returns the key of the specified template tree, or {@code null} if it could match trees with
+   * different keys.  A template tree with a key matches only target trees with the same key, and
+   * only binary and unary expressions have keyed children.
+   */
+  @Nullable
+  private static Object key(UTree<?> template) {
+    template = skipTransparent(template);
+    if (template instanceof UMemberSelect) {
+      // may match either a member select or a bare identifier with the same name
+      return name(((UMemberSelect) template).getIdentifier());
+    } else if (template instanceof UMethodInvocation) {
+      UTree<?> methodSelect = skipTransparent(((UMethodInvocation) template).getMethodSelect());
+      if (methodSelect instanceof UMemberSelect) {
+        return invocation(((UMemberSelect) methodSelect).getIdentifier());
+      } else if (methodSelect instanceof UStaticIdent) {
+        return invocation(((UStaticIdent) methodSelect).getName());
+      }
+      return null;
+    } else if (template instanceof ULiteral) {
+      return literal(template.getKind(), ((ULiteral) template).getValue());
+    }
+    Kind kind = template.getKind();
+    switch (kind) {
+      case IDENTIFIER:
+      case MEMBER_SELECT:
+      case METHOD_INVOCATION:
+      case PARENTHESIZED:
+      case OTHER:
+        return null;
+      default:
+        return template.targetKinds().equals(EnumSet.of(kind))
+            ? ImmutableList.<Object>of(kind) : null;
+    }
+  }
+
+  /**
+   * Skips template trees that match whatever their only child matches, as far as keys go.
+   */
+  private static UTree<?> skipTransparent(UTree<?> template) {
+    while (true) {
+      if (template instanceof UParens) {
+        template = ((UParens) template).getExpression();
+      } else if (template instanceof UMatches) {
+        template = ((UMatches) template).expression();
+      } else if (template instanceof UOfKind) {
+        template = ((UOfKind) template).expression();
+      } else {
+        return template;
+      }
+    }
+  }
+
+  private static Object name(CharSequence name) {
+    return ImmutableList.<Object>of(Kind.IDENTIFIER, name.toString());
+  }
+
+  private static Object invocation(CharSequence methodName) {
+    return ImmutableList.<Object>of(Kind.METHOD_INVOCATION, methodName.toString());
+  }
+
+  /**
+   * Returns the key of a literal, whose value is {@code null} only for the {@code null} literal.
+   */
+  private static Object literal(Kind kind, @Nullable Object value) {
+    return (value == null)
+        ? ImmutableList.<Object>of(kind)
+        : ImmutableList.<Object>of(kind, value);
+  }
+}
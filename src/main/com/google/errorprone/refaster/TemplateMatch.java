@@ -48,12 +48,33 @@ public abstract class TemplateMatch {
   public Inliner createInliner() {
     return unifier.createInliner();
   }
+
+  /**
+   * Returns the last tree of the match.  This is the location itself, unless the match spans
+   * several consecutive trees.
+   */
+  public JCTree getLastLocation() {
+    return location;
+  }
+
+  /**
+   * Returns the start position of the matched source, inclusive.
+   */
+  public int getStartPosition() {
+    return location.getStartPosition();
+  }
+
+  /**
+   * Returns the end position of the matched source in the specified compilation unit, exclusive.
+   */
+  public int getEndPosition(JCCompilationUnit unit) {
+    return getLastLocation().getEndPosition(unit.endPositions);
+  }
   
   public String getRange(JCCompilationUnit unit) {
     try {
       CharSequence sequence = unit.getSourceFile().getCharContent(true);
-      return sequence.subSequence(location.getStartPosition(),
-          location.getEndPosition(unit.endPositions)).toString();
+      return sequence.subSequence(getStartPosition(), getEndPosition(unit)).toString();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.common.base.Equivalence;
+import com.google.common.base.Objects;
+
+import com.sun.source.tree.ArrayAccessTree;
+import com.sun.source.tree.ArrayTypeTree;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.BreakTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.ConditionalExpressionTree;
+import com.sun.source.tree.ContinueTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.InstanceOfTree;
+import com.sun.source.tree.LabeledStatementTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ModifiersTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.PrimitiveTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.tree.TypeParameterTree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.tree.WildcardTree;
+import com.sun.source.util.SimpleTreeVisitor;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * An {@code Equivalence} on syntax trees, under which two trees are equivalent if they have the
+ * same shape, and corresponding nodes have the same kind, names, literal values, modifiers and,
+ * where both are attributed, symbols.  The children of corresponding nodes are compared slot by
+ * slot, so that, for example, the dimensions of one array creation never match the initializers
+ * of another.  Unlike comparing the pretty-printed trees, this neither allocates strings nor
+ * depends on formatting.
+ */
+final class TreeEquivalence extends Equivalence<Tree> {
+  static final TreeEquivalence INSTANCE = new TreeEquivalence();
+
+  private TreeEquivalence() {}
+
+  @Override
+  protected boolean doEquivalent(Tree a, Tree b) {
+    return equivalentTrees(a, b);
+  }
+
+  @Override
+  protected int doHash(Tree tree) {
+    final int[] hash = {1};
+    new TreeScanner<Void, Void>() {
+      @Override
+      public Void scan(Tree node, Void v) {
+        if (node != null) {
+          hash[0] = 31 * hash[0] + nodeHash(node);
+          super.scan(node, v);
+        }
+        return null;
+      }
+    }.scan(tree, null);
+    return hash[0];
+  }
+
+  /**
+   * Returns whether the specified trees, either of which may be absent, are equivalent.  The
+   * trees are walked in parallel, returning at the first difference.
+   */
+  private static boolean equivalentTrees(@Nullable Tree a, @Nullable Tree b) {
+    if (a == b) {
+      return true;
+    } else if (a == null || b == null || !sameNode(a, b)) {
+      return false;
+    }
+    return a.accept(SAME_CHILDREN, b);
+  }
+
+  /**
+   * Returns whether the specified lists of trees, either of which may be absent, are pairwise
+   * equivalent.
+   */
+  private static boolean equivalentTrees(
+      @Nullable Iterable<? extends Tree> a, @Nullable Iterable<? extends Tree> b) {
+    if (a == b) {
+      return true;
+    } else if (a == null || b == null) {
+      return false;
+    }
+    Iterator<? extends Tree> aItr = a.iterator();
+    Iterator<? extends Tree> bItr = b.iterator();
+    while (aItr.hasNext() && bItr.hasNext()) {
+      if (!equivalentTrees(aItr.next(), bItr.next())) {
+        return false;
+      }
+    }
+    return !aItr.hasNext() && !bItr.hasNext();
+  }
+
+  /**
+   * Compares the children of a node with those of another node of the same kind, slot by slot.
+   * The kinds of tree most often bound to template variables are compared directly; any other
+   * kind falls back on {@link #equivalentSlots}.
+   */
+  private static final SimpleTreeVisitor<Boolean, Tree> SAME_CHILDREN =
+      new SimpleTreeVisitor<Boolean, Tree>() {
+        @Override
+        protected Boolean defaultAction(Tree a, Tree b) {
+          return equivalentSlots(a, b);
+        }
+
+        @Override
+        public Boolean visitIdentifier(IdentifierTree a, Tree b) {
+          return true;
+        }
+
+        @Override
+        public Boolean visitLiteral(LiteralTree a, Tree b) {
+          return true;
+        }
+
+        @Override
+        public Boolean visitPrimitiveType(PrimitiveTypeTree a, Tree b) {
+          return true;
+        }
+
+        @Override
+        public Boolean visitMemberSelect(MemberSelectTree a, Tree b) {
+          return equivalentTrees(a.getExpression(), ((MemberSelectTree) b).getExpression());
+        }
+
+        @Override
+        public Boolean visitMethodInvocation(MethodInvocationTree a, Tree b) {
+          MethodInvocationTree other = (MethodInvocationTree) b;
+          return equivalentTrees(a.getMethodSelect(), other.getMethodSelect())
+              && equivalentTrees(a.getArguments(), other.getArguments())
+              && equivalentTrees(a.getTypeArguments(), other.getTypeArguments());
+        }
+
+        @Override
+        public Boolean visitBinary(BinaryTree a, Tree b) {
+          BinaryTree other = (BinaryTree) b;
+          return equivalentTrees(a.getLeftOperand(), other.getLeftOperand())
+              && equivalentTrees(a.getRightOperand(), other.getRightOperand());
+        }
+
+        @Override
+        public Boolean visitUnary(UnaryTree a, Tree b) {
+          return equivalentTrees(a.getExpression(), ((UnaryTree) b).getExpression());
+        }
+
+        @Override
+        public Boolean visitParenthesized(ParenthesizedTree a, Tree b) {
+          return equivalentTrees(a.getExpression(), ((ParenthesizedTree) b).getExpression());
+        }
+
+        @Override
+        public Boolean visitTypeCast(TypeCastTree a, Tree b) {
+          TypeCastTree other = (TypeCastTree) b;
+          return equivalentTrees(a.getType(), other.getType())
+              && equivalentTrees(a.getExpression(), other.getExpression());
+        }
+
+        @Override
+        public Boolean visitConditionalExpression(ConditionalExpressionTree a, Tree b) {
+          ConditionalExpressionTree other = (ConditionalExpressionTree) b;
+          return equivalentTrees(a.getCondition(), other.getCondition())
+              && equivalentTrees(a.getTrueExpression(), other.getTrueExpression())
+              && equivalentTrees(a.getFalseExpression(), other.getFalseExpression());
+        }
+
+        @Override
+        public Boolean visitArrayAccess(ArrayAccessTree a, Tree b) {
+          ArrayAccessTree other = (ArrayAccessTree) b;
+          return equivalentTrees(a.getExpression(), other.getExpression())
+              && equivalentTrees(a.getIndex(), other.getIndex());
+        }
+
+        @Override
+        public Boolean visitNewArray(NewArrayTree a, Tree b) {
+          NewArrayTree other = (NewArrayTree) b;
+          return equivalentTrees(a.getType(), other.getType())
+              && equivalentTrees(a.getDimensions(), other.getDimensions())
+              && equivalentTrees(a.getInitializers(), other.getInitializers());
+        }
+
+        @Override
+        public Boolean visitNewClass(NewClassTree a, Tree b) {
+          NewClassTree other = (NewClassTree) b;
+          return equivalentTrees(a.getEnclosingExpression(), other.getEnclosingExpression())
+              && equivalentTrees(a.getIdentifier(), other.getIdentifier())
+              && equivalentTrees(a.getArguments(), other.getArguments())
+              && equivalentTrees(a.getTypeArguments(), other.getTypeArguments())
+              && equivalentTrees(a.getClassBody(), other.getClassBody());
+        }
+
+        @Override
+        public Boolean visitAssignment(AssignmentTree a, Tree b) {
+          AssignmentTree other = (AssignmentTree) b;
+          return equivalentTrees(a.getVariable(), other.getVariable())
+              && equivalentTrees(a.getExpression(), other.getExpression());
+        }
+
+        @Override
+        public Boolean visitCompoundAssignment(CompoundAssignmentTree a, Tree b) {
+          CompoundAssignmentTree other = (CompoundAssignmentTree) b;
+          return equivalentTrees(a.getVariable(), other.getVariable())
+              && equivalentTrees(a.getExpression(), other.getExpression());
+        }
+
+        @Override
+        public Boolean visitInstanceOf(InstanceOfTree a, Tree b) {
+          InstanceOfTree other = (InstanceOfTree) b;
+          return equivalentTrees(a.getExpression(), other.getExpression())
+              && equivalentTrees(a.getType(), other.getType());
+        }
+
+        @Override
+        public Boolean visitArrayType(ArrayTypeTree a, Tree b) {
+          return equivalentTrees(a.getType(), ((ArrayTypeTree) b).getType());
+        }
+
+        @Override
+        public Boolean visitParameterizedType(ParameterizedTypeTree a, Tree b) {
+          ParameterizedTypeTree other = (ParameterizedTypeTree) b;
+          return equivalentTrees(a.getType(), other.getType())
+              && equivalentTrees(a.getTypeArguments(), other.getTypeArguments());
+        }
+
+        @Override
+        public Boolean visitWildcard(WildcardTree a, Tree b) {
+          return equivalentTrees(a.getBound(), ((WildcardTree) b).getBound());
+        }
+      };
+
+  /**
+   * Compares the children of two nodes of the same kind slot by slot, as {@code TreeScanner}
+   * visits them: each slot is a single child, which may be absent, or a list of children.
+   */
+  private static boolean equivalentSlots(Tree a, Tree b) {
+    List<Object> aSlots = slots(a);
+    List<Object> bSlots = slots(b);
+    if (aSlots.size() != bSlots.size()) {
+      return false;
+    }
+    for (int i = 0; i < aSlots.size(); i++) {
+      Object aSlot = aSlots.get(i);
+      Object bSlot = bSlots.get(i);
+      boolean equivalent = (aSlot instanceof Iterable || bSlot instanceof Iterable)
+          ? equivalentTrees(asTrees(aSlot), asTrees(bSlot))
+          : equivalentTrees((Tree) aSlot, (Tree) bSlot);
+      if (!equivalent) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  private static Iterable<? extends Tree> asTrees(@Nullable Object slot) {
+    return (slot instanceof Iterable) ? (Iterable<? extends Tree>) slot : null;
+  }
+
+  /**
+   * Returns the child slots of the specified node, without visiting its descendants.
+   */
+  private static List<Object> slots(Tree tree) {
+    final List<Object> slots = new ArrayList<>();
+    tree.accept(new TreeScanner<Void, Void>() {
+      @Override
+      public Void scan(Tree node, Void v) {
+        slots.add(node);
+        return null;
+      }
+
+      @Override
+      public Void scan(Iterable<? extends Tree> nodes, Void v) {
+        slots.add(nodes);
+        return null;
+      }
+    }, null);
+    return slots;
+  }
+
+  /**
+   * Returns whether the specified nodes are the same, ignoring their children.
+   */
+  private static boolean sameNode(Tree a, Tree b) {
+    if (a.getKind() != b.getKind() || !Objects.equal(nodeValue(a), nodeValue(b))) {
+      return false;
+    }
+    Symbol aSym = symbol(a);
+    Symbol bSym = symbol(b);
+    return aSym == null || bSym == null || aSym == bSym;
+  }
+
+  /**
+   * Returns the symbol an identifier or member select refers to, or {@code null} if the node is
+   * not one or has not been attributed.
+   */
+  @Nullable
+  private static Symbol symbol(Tree node) {
+    if (node instanceof JCIdent) {
+      return ((JCIdent) node).sym;
+    } else if (node instanceof JCFieldAccess) {
+      return ((JCFieldAccess) node).sym;
+    }
+    return null;
+  }
+
+  private static int nodeHash(Tree node) {
+    return 31 * node.getKind().hashCode() + Objects.hashCode(nodeValue(node));
+  }
+
+  /**
+   * Returns the properties of the specified node other than its kind and children that
+   * distinguish it, or {@code null} if there are none.
+   */
+  @Nullable
+  private static Object nodeValue(Tree node) {
+    if (node instanceof IdentifierTree) {
+      return ((IdentifierTree) node).getName().toString();
+    } else if (node instanceof MemberSelectTree) {
+      return ((MemberSelectTree) node).getIdentifier().toString();
+    } else if (node instanceof LiteralTree) {
+      return ((LiteralTree) node).getValue();
+    } else if (node instanceof PrimitiveTypeTree) {
+      return ((PrimitiveTypeTree) node).getPrimitiveTypeKind();
+    } else if (node instanceof ModifiersTree) {
+      return ((ModifiersTree) node).getFlags();
+    } else if (node instanceof VariableTree) {
+      return ((VariableTree) node).getName().toString();
+    } else if (node instanceof MethodTree) {
+      return ((MethodTree) node).getName().toString();
+    } else if (node instanceof ClassTree) {
+      return ((ClassTree) node).getSimpleName().toString();
+    } else if (node instanceof TypeParameterTree) {
+      return ((TypeParameterTree) node).getName().toString();
+    } else if (node instanceof LabeledStatementTree) {
+      return ((LabeledStatementTree) node).getLabel().toString();
+    } else if (node instanceof BreakTree) {
+      return String.valueOf(((BreakTree) node).getLabel());
+    } else if (node instanceof ContinueTree) {
+      return String.valueOf(((ContinueTree) node).getLabel());
+    }
+    return null;
+  }
+}
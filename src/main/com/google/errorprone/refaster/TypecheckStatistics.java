@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.sun.tools.javac.util.Context;
+
+/**
+ * Accumulates the structural unifications and typechecks performed while matching a template, so
+ * that the time spent typechecking can be distinguished from the time spent in structural
+ * unification.  Bound in the context of a {@link RefasterScanner} only if a
+ * {@link RuleStatisticsListener} is.
+ */
+final class TypecheckStatistics {
+  /**
+   * Records a successful structural unification in the specified context, if statistics are
+   * gathered in it.
+   */
+  static void recordUnification(Context context) {
+    TypecheckStatistics statistics = context.get(TypecheckStatistics.class);
+    if (statistics != null) {
+      statistics.unifications++;
+    }
+  }
+
+  private int unifications;
+  private int attempts;
+  private int successes;
+  private long nanos;
+
+  void reset() {
+    unifications = 0;
+    attempts = 0;
+    successes = 0;
+    nanos = 0;
+  }
+
+  void record(boolean success, long elapsedNanos) {
+    attempts++;
+    if (success) {
+      successes++;
+    }
+    nanos += elapsedNanos;
+  }
+
+  int unifications() {
+    return unifications;
+  }
+
+  int attempts() {
+    return attempts;
+  }
+
+  int successes() {
+    return successes;
+  }
+
+  long nanos() {
+    return nanos;
+  }
+}
@@ -23,6 +23,9 @@ import com.sun.source.tree.Tree;
 import com.sun.source.tree.TreeVisitor;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.annotation.Nullable;
 
 /**
@@ -55,11 +58,13 @@ public abstract class UAnyOf extends UExpression {
   @Nullable
   protected Unifier defaultAction(Tree tree, @Nullable Unifier unifier) {
     tree = UParens.skipParens(tree);
+    Object mark = unifier.mark();
     for (UExpression expression : expressions()) {
-      Unifier success = expression.unify(tree, unifier.fork());
+      Unifier success = expression.unify(tree, unifier);
       if (success != null) {
         return success;
       }
+      unifier.rollback(mark);
     }
     return null;
   }
@@ -78,4 +83,13 @@ public abstract class UAnyOf extends UExpression {
   public Kind getKind() {
     return Kind.OTHER;
   }
+
+  @Override
+  Set<Kind> targetKinds() {
+    Set<Kind> kinds = EnumSet.of(Kind.PARENTHESIZED);
+    for (UExpression expression : expressions()) {
+      kinds.addAll(expression.targetKinds());
+    }
+    return kinds;
+  }
 }
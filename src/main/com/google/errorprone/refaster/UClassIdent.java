@@ -28,7 +28,9 @@ import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 import javax.lang.model.element.Name;
@@ -79,6 +81,12 @@ abstract class UClassIdent extends UIdent {
         ? unifier : null;
   }
 
+  @Override
+  Set<Kind> targetKinds() {
+    // any tree with the appropriate symbol matches, e.g. both identifiers and member selects
+    return EnumSet.allOf(Kind.class);
+  }
+
   @Override
   public Name getName() {
     return StringName.of(getQualifiedName());
@@ -46,13 +46,15 @@ public abstract class UForAll extends UType {
   @Nullable
   public Unifier visitForAll(ForAll target, @Nullable Unifier unifier) {
     Types types = unifier.types();
-    try {
-      Type myType = inline(new Inliner(unifier.getContext(), Bindings.create()));
-      if (types.overrideEquivalent(types.erasure(myType), types.erasure(target))) {
-        return unifier;
+    synchronized (SubContext.javacLock(unifier.getContext())) {
+      try {
+        Type myType = inline(new Inliner(unifier.getContext(), Bindings.create()));
+        if (types.overrideEquivalent(types.erasure(myType), types.erasure(target))) {
+          return unifier;
+        }
+      } catch (CouldNotResolveImportException e) {
+        // fall through
       }
-    } catch (CouldNotResolveImportException e) {
-      // fall through
     }
     return null;
   }
@@ -17,7 +17,6 @@
 package com.google.errorprone.refaster;
 
 import com.google.auto.value.AutoValue;
-import com.google.common.collect.Iterables;
 import com.google.errorprone.util.ASTHelpers;
 
 import com.sun.source.tree.ExpressionTree;
@@ -27,6 +26,9 @@ import com.sun.source.util.TreeScanner;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
 import com.sun.tools.javac.util.Names;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.annotation.Nullable;
 import javax.lang.model.element.Name;
 
@@ -49,8 +51,15 @@ public abstract class UFreeIdent extends UIdent {
   
   abstract String identifier();
   
+  // memoized, so that unification never allocates keys and usually compares them by identity
+  @Nullable private transient Key key;
+
   public Key key() {
-    return new Key(identifier());
+    Key result = key;
+    if (result == null) {
+      key = result = new Key(identifier());
+    }
+    return result;
   }
 
   @Override
@@ -85,13 +94,7 @@ public abstract class UFreeIdent extends UIdent {
 
         @Override
         public Boolean visitIdentifier(IdentifierTree ident, Void v) {
-          for (ULocalVarIdent.Key key : 
-              Iterables.filter(unifier.getBindings().keySet(), ULocalVarIdent.Key.class)) {
-            if (unifier.getBinding(key).getSymbol() == ASTHelpers.getSymbol(ident)) {
-              return false;
-            }
-          }
-          return true;
+          return !unifier.isBoundLocalVariable(ASTHelpers.getSymbol(ident));
         }
       }.scan(expression, null));
       if (!isGood) {
@@ -99,8 +102,8 @@ public abstract class UFreeIdent extends UIdent {
       } else if (currentBinding == null) {
         unifier.putBinding(key(), expression);
         return unifier;
-      } else if (unifier.types().isSameType(currentBinding.type, expression.type)
-          && currentBinding.toString().equals(expression.toString())) {
+      } else if (unifier.isSameType(currentBinding.type, expression.type)
+          && TreeEquivalence.INSTANCE.equivalent(currentBinding, expression)) {
         // If it's the same type and the same code, treat it as the same expression.
         return unifier;
       }
@@ -108,6 +111,11 @@ public abstract class UFreeIdent extends UIdent {
     return null;
   }
 
+  @Override
+  Set<Kind> targetKinds() {
+    return EnumSet.allOf(Kind.class);
+  }
+
   @Override
   public Name getName() {
     // we don't have a Context, so use StringName
@@ -48,8 +48,14 @@ abstract class ULocalVarIdent extends UIdent {
   
   abstract String identifier();
   
+  @Nullable private transient Key key;
+
   Key key() {
-    return new Key(identifier());
+    Key result = key;
+    if (result == null) {
+      key = result = new Key(identifier());
+    }
+    return result;
   }
 
   @Override
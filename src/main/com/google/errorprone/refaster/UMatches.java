@@ -17,17 +17,16 @@
 package com.google.errorprone.refaster;
 
 import com.google.auto.value.AutoValue;
-import com.google.errorprone.MatchListener;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.matchers.Matcher;
 
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.TreeVisitor;
-import com.sun.source.util.TreePath;
-import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
-import com.sun.tools.javac.util.Context;
+
+import java.util.EnumSet;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -74,14 +73,31 @@ abstract class UMatches extends UExpression {
     return Kind.OTHER;
   }
 
-  private transient Matcher<? super ExpressionTree> matcher;
+  @Override
+  Set<Kind> targetKinds() {
+    Set<Kind> kinds = EnumSet.of(Kind.PARENTHESIZED);
+    kinds.addAll(expression().targetKinds());
+    return kinds;
+  }
+
+  // Templates may be shared between threads.  Matchers are stateless, so threads racing to create
+  // the matcher may each use their own.
+  @Nullable private transient volatile Matcher<? super ExpressionTree> matcher;
 
   private boolean matches(Tree target, Unifier unifier) {
+    Matcher<? super ExpressionTree> matcher = this.matcher;
     if (matcher == null) {
-      matcher = makeMatcher(matcherClass());
+      this.matcher = matcher = makeMatcher(matcherClass());
+    }
+    if (!(target instanceof ExpressionTree)) {
+      return false;
+    }
+    VisitorState state =
+        MatcherState.instance(unifier.getContext()).forTarget(target, unifier.getContext());
+    // Matchers may use any of javac's components.
+    synchronized (SubContext.javacLock(unifier.getContext())) {
+      return matcher.matches((ExpressionTree) target, state);
     }
-    return target instanceof ExpressionTree
-        && matcher.matches((ExpressionTree) target, makeVisitorState(target, unifier));
   }
 
   private static <T> T makeMatcher(Class<T> klass) {
@@ -91,17 +107,4 @@ abstract class UMatches extends UExpression {
       throw new RuntimeException(e);
     }
   }
-
-  private static VisitorState makeVisitorState(Tree target, Unifier unifier) {
-    Context context = unifier.getContext();
-    TreePath path = TreePath.getPath(context.get(JCCompilationUnit.class), target);
-    return new VisitorState(context, new DummyMatchListener()).withPath(path);
-  }
-
-  // TODO(mdempsky): Fix error-prone; this shouldn't be necessary.
-  private static class DummyMatchListener implements MatchListener {
-    @Override
-    public void onMatch(Tree tree) {
-    }
-  }
 }
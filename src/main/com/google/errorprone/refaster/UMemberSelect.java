@@ -28,6 +28,9 @@ import com.sun.tools.javac.tree.JCTree.JCExpression;
 import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
 import com.sun.tools.javac.tree.JCTree.JCIdent;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.annotation.Nullable;
 import javax.lang.model.element.Name;
 
@@ -95,6 +98,12 @@ public abstract class UMemberSelect extends UExpression implements MemberSelectT
     return Kind.MEMBER_SELECT;
   }
 
+  @Override
+  Set<Kind> targetKinds() {
+    // members of this may be referenced as bare identifiers
+    return EnumSet.of(Kind.MEMBER_SELECT, Kind.IDENTIFIER);
+  }
+
   @Override
   public <R, D> R accept(TreeVisitor<R, D> visitor, D data) {
     return visitor.visitMemberSelect(this, data);
@@ -22,6 +22,7 @@ import com.sun.source.tree.Tree;
 import com.sun.source.tree.TreeVisitor;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
 
+import java.util.EnumSet;
 import java.util.Set;
 
 import javax.annotation.Nullable;
@@ -54,6 +55,14 @@ abstract class UOfKind extends UExpression {
   public Kind getKind() {
     return expression().getKind();
   }
+
+  @Override
+  Set<Kind> targetKinds() {
+    Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+    kinds.addAll(allowed());
+    kinds.retainAll(expression().targetKinds());
+    return kinds;
+  }
   
   @Override
   @Nullable
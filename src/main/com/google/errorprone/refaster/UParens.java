@@ -24,6 +24,9 @@ import com.sun.source.tree.TreeVisitor;
 import com.sun.source.util.SimpleTreeVisitor;
 import com.sun.tools.javac.tree.JCTree.JCParens;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.annotation.Nullable;
 
 /**
@@ -67,6 +70,14 @@ abstract class UParens extends UExpression implements ParenthesizedTree {
     return Kind.PARENTHESIZED;
   }
 
+  @Override
+  Set<Kind> targetKinds() {
+    // parentheses are optional in the target
+    Set<Kind> kinds = EnumSet.of(Kind.PARENTHESIZED);
+    kinds.addAll(getExpression().targetKinds());
+    return kinds;
+  }
+
   @Override
   public <R, D> R accept(TreeVisitor<R, D> visitor, D data) {
     return visitor.visitParenthesized(this, data);
@@ -23,6 +23,7 @@ import com.sun.source.tree.TreeVisitor;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
 
 import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -60,15 +61,36 @@ abstract class URepeated extends UExpression {
     return Kind.OTHER;
   }
 
+  @Override
+  Set<Kind> targetKinds() {
+    return expression().targetKinds();
+  }
+
+  @Nullable private transient UFreeIdent.Key underlyingKey;
+
+  private UFreeIdent.Key underlyingKey() {
+    UFreeIdent.Key result = underlyingKey;
+    if (result == null) {
+      underlyingKey = result = new UFreeIdent.Key(identifier());
+    }
+    return result;
+  }
+
   /** Gets the binding of the underlying identifier in the unifier. */
   public JCExpression getUnderlyingBinding(Unifier unifier) {
     return (unifier == null)
         ? null
-        : unifier.getBinding(new UFreeIdent.Key(identifier()));
+        : unifier.getBinding(underlyingKey());
   }
 
+  @Nullable private transient Key key;
+
   public Key key() {
-    return new Key(identifier());
+    Key result = key;
+    if (result == null) {
+      key = result = new Key(identifier());
+    }
+    return result;
   }
 
   /**
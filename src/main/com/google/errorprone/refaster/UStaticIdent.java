@@ -24,6 +24,9 @@ import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.annotation.Nullable;
 import javax.lang.model.element.Name;
 
@@ -70,6 +73,12 @@ public abstract class UStaticIdent extends UIdent {
     }
     return null;
   }
+
+  @Override
+  Set<Kind> targetKinds() {
+    // any tree with the appropriate symbol matches, e.g. both identifiers and member selects
+    return EnumSet.allOf(Kind.class);
+  }
   
   @Override
   public Name getName() {
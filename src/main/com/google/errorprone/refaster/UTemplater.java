@@ -111,6 +111,12 @@ import javax.lang.model.type.MirroredTypeException;
 /**
  * Converts a type-checked syntax tree to a portable {@code UTree} template.
  *
+ * <p>Templated subtrees are {@linkplain SubtreeInterner interned} bottom-up, so that identical
+ * subtrees of the templates of all rules, such as references to common classes and static
+ * members, are represented by a single object.
+ * Subtrees referring to template type variables are not interned, since {@code UTypeVar} bounds
+ * are only set after the type variable has been created.
+ *
  * @author lowasser@google.com (Louis Wasserman)
  */
 public class UTemplater extends SimpleTreeVisitor<UTree<?>, Void> {
@@ -188,6 +194,12 @@ public class UTemplater extends SimpleTreeVisitor<UTree<?>, Void> {
   private final ImmutableMap<String, VarSymbol> freeVariables;
   private final Context context;
 
+  /**
+   * The number of type variables templated so far.  A subtree is only interned if this did not
+   * change while templating it.
+   */
+  private int typeVariablesTemplated;
+
   public UTemplater(Map<String, VarSymbol> freeVariables, Context context) {
     this.freeVariables = ImmutableMap.copyOf(freeVariables);
     this.context = context;
@@ -198,7 +210,10 @@ public class UTemplater extends SimpleTreeVisitor<UTree<?>, Void> {
   }
 
   public UTree<?> template(Tree tree) {
-    return tree.accept(this, null);
+    int typeVariables = typeVariablesTemplated;
+    UTree<?> result = tree.accept(this, null);
+    return (result != null && typeVariablesTemplated == typeVariables)
+        ? SubtreeInterner.intern(result) : result;
   }
   
   private static <T> ImmutableList<T> cast(Iterable<?> elements, Class<T> clazz) {
@@ -227,7 +242,7 @@ public class UTemplater extends SimpleTreeVisitor<UTree<?>, Void> {
   }
 
   public UExpression template(ExpressionTree tree) {
-    return (UExpression) tree.accept(this, null);
+    return (UExpression) template((Tree) tree);
   }
 
   @Nullable
@@ -552,7 +567,7 @@ public class UTemplater extends SimpleTreeVisitor<UTree<?>, Void> {
   }
 
   public UStatement template(StatementTree tree) {
-    return (UStatement) tree.accept(this, null);
+    return (UStatement) template((Tree) tree);
   }
 
   @Nullable
@@ -650,7 +665,10 @@ public class UTemplater extends SimpleTreeVisitor<UTree<?>, Void> {
   }
 
   public UType template(Type type) {
-    return type.accept(typeTemplater, null);
+    int typeVariables = typeVariablesTemplated;
+    UType result = type.accept(typeTemplater, null);
+    return (result != null && typeVariablesTemplated == typeVariables)
+        ? SubtreeInterner.intern(result) : result;
   }
 
   private List<UType> templateTypes(Iterable<? extends Type> types) {
@@ -676,13 +694,13 @@ public class UTemplater extends SimpleTreeVisitor<UTree<?>, Void> {
 
     @Override
     public UArrayType visitArrayType(ArrayType type, Void v) {
-      return UArrayType.create(type.getComponentType().accept(this, null));
+      return UArrayType.create(template(type.getComponentType()));
     }
 
     @Override
     public UMethodType visitMethodType(MethodType type, Void v) {
       return UMethodType.create(
-          type.getReturnType().accept(this, null), templateTypes(type.getParameterTypes()));
+          template(type.getReturnType()), templateTypes(type.getParameterTypes()));
     }
 
     @Override
@@ -693,7 +711,7 @@ public class UTemplater extends SimpleTreeVisitor<UTree<?>, Void> {
 
     @Override
     public UWildcardType visitWildcardType(WildcardType type, Void v) {
-      return UWildcardType.create(type.kind, type.type.accept(this, null));
+      return UWildcardType.create(type.kind, template(type.type));
     }
 
     @Override
@@ -702,21 +720,22 @@ public class UTemplater extends SimpleTreeVisitor<UTree<?>, Void> {
        * In order to handle recursively bounded type variables without a stack overflow, we first
        * cache a type var with no bounds, then we template the bounds.
        */
+      typeVariablesTemplated++;
       TypeSymbol tsym = type.asElement();
       if (typeVariables.containsKey(tsym)) {
         return typeVariables.get(tsym);
       }
       UTypeVar var = UTypeVar.create(tsym.getSimpleName().toString());
       typeVariables.put(tsym, var); // so the type variable can be used recursively in the bounds
-      var.setLowerBound(type.getLowerBound().accept(this, null));
-      var.setUpperBound(type.getUpperBound().accept(this, null));
+      var.setLowerBound(template(type.getLowerBound()));
+      var.setUpperBound(template(type.getUpperBound()));
       return var;
     }
 
     @Override
     public UForAll visitForAll(ForAll type, Void v) {
       List<UTypeVar> vars = cast(templateTypes(type.getTypeVariables()), UTypeVar.class);
-      return UForAll.create(vars, type.qtype.accept(this, null));
+      return UForAll.create(vars, template(type.qtype));
     }
   };
 
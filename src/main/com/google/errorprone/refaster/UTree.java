@@ -20,6 +20,9 @@ import com.sun.source.tree.Tree;
 import com.sun.source.util.SimpleTreeVisitor;
 import com.sun.tools.javac.tree.JCTree;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * A serializable representation of a template syntax tree which can be unified with a target AST
  * and inlined based on a set of substitutions.
@@ -33,4 +36,12 @@ public abstract class UTree<T extends JCTree> extends SimpleTreeVisitor<Unifier,
   public Unifier unify(Tree target, Unifier unifier) {
     return (target != null && unifier != null) ? target.accept(this, unifier) : null;
   }
+
+  /**
+   * Returns the kinds of target trees this template tree could possibly unify with.  By default,
+   * a template tree only unifies with trees of its own kind.
+   */
+  Set<Kind> targetKinds() {
+    return EnumSet.of(getKind());
+  }
 }
@@ -36,9 +36,19 @@ public abstract class UType extends Types.SimpleVisitor<Unifier, Unifier>
     return null;
   }
 
+  /**
+   * Unifies this type with the target type while holding the
+   * {@linkplain SubContext#javacLock javac lock}, since inspecting a type, such as its type
+   * arguments, can complete its symbol.
+   */
   @Override
   @Nullable
   public final Unifier unify(Type target, @Nullable Unifier unifier) {
-    return (unifier != null && target != null) ? target.accept(this, unifier) : null;
+    if (unifier == null || target == null) {
+      return null;
+    }
+    synchronized (SubContext.javacLock(unifier.getContext())) {
+      return target.accept(this, unifier);
+    }
   }
 }
@@ -98,8 +98,14 @@ public class UTypeVar extends UType {
     return !target.isPrimitive() ? unifier : null;
   }
   
+  @Nullable private transient Key key;
+
   public Key key() {
-    return new Key(name);
+    Key result = key;
+    if (result == null) {
+      key = result = new Key(name);
+    }
+    return result;
   }
 
   public String getName() {
@@ -115,16 +121,23 @@ public class UTypeVar extends UType {
   }
 
   /**
+   * Sets the lower bound of this type variable.  Bounds may only be set while templating, since
+   * recursively bounded type variables must exist before their bounds can be templated; templates
+   * are immutable once created, and may be shared between threads.
+   *
    * @param lowerBound the lowerBound to set
    */
-  public void setLowerBound(UType lowerBound) {
+  void setLowerBound(UType lowerBound) {
     this.lowerBound = checkNotNull(lowerBound);
   }
 
   /**
+   * Sets the upper bound of this type variable, subject to the same restrictions as
+   * {@link #setLowerBound}.
+   *
    * @param upperBound the upperBound to set
    */
-  public void setUpperBound(UType upperBound) {
+  void setUpperBound(UType upperBound) {
     this.upperBound = checkNotNull(upperBound);
   }
 
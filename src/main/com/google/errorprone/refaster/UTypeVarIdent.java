@@ -23,6 +23,9 @@ import com.sun.source.tree.Tree;
 import com.sun.tools.javac.code.Type;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.annotation.Nullable;
 import javax.lang.model.element.Name;
 
@@ -40,8 +43,14 @@ abstract class UTypeVarIdent extends UIdent {
   
   abstract String name();
   
+  @Nullable private transient UTypeVar.Key key;
+
   UTypeVar.Key key() {
-    return new UTypeVar.Key(name());
+    UTypeVar.Key result = key;
+    if (result == null) {
+      key = result = new UTypeVar.Key(name());
+    }
+    return result;
   }
 
   @Override
@@ -60,13 +69,18 @@ abstract class UTypeVarIdent extends UIdent {
       if (boundType == null) {
         unifier.putBinding(key(), TypeWithExpression.create(targetType, expr));
         return unifier;
-      } else if (unifier.types().isSameType(targetType, boundType.type())) {
+      } else if (unifier.isSameType(targetType, boundType.type())) {
         return unifier;
       }
     }
     return null;
   }
 
+  @Override
+  Set<Kind> targetKinds() {
+    return EnumSet.allOf(Kind.class);
+  }
+
   @Override
   public Name getName() {
     return StringName.of(name());
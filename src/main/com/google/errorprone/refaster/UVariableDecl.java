@@ -64,8 +64,14 @@ public abstract class UVariableDecl extends UStatement implements VariableTree {
   @Nullable
   public abstract UExpression getInitializer();
   
+  @Nullable private transient ULocalVarIdent.Key key;
+
   ULocalVarIdent.Key key() {
-    return new ULocalVarIdent.Key(identifier());
+    ULocalVarIdent.Key result = key;
+    if (result == null) {
+      key = result = new ULocalVarIdent.Key(identifier());
+    }
+    return result;
   }
 
   @Override
@@ -19,8 +19,11 @@ package com.google.errorprone.refaster;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.collect.Sets;
 import com.google.errorprone.refaster.Bindings.Key;
 
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
 import com.sun.tools.javac.code.Type;
 import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.tree.JCTree;
@@ -31,6 +34,8 @@ import com.sun.tools.javac.util.Context;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -41,7 +46,16 @@ import javax.annotation.Nullable;
  * @author Louis Wasserman
  */
 public final class Unifier {
+  private static final Object STALE = new Object();
+
   private final Bindings bindings;
+
+  /**
+   * The symbols of the local variables bound to {@link ULocalVarIdent.Key}s, valid only while
+   * {@link #mark} returns {@code localVariablesMark}.
+   */
+  private final Set<VarSymbol> localVariables = Sets.newIdentityHashSet();
+  private Object localVariablesMark = STALE;
   
   private final Context context;
 
@@ -63,12 +77,41 @@ public final class Unifier {
     return new Unifier(context, bindings);
   }
   
+  /**
+   * Returns a marker for the current bindings of this {@code Unifier}, which may be passed to
+   * {@link #rollback} to undo any bindings made since.  Unlike {@link #fork}, marking and rolling
+   * back allocate nothing, so failed unification attempts can backtrack in place.
+   */
+  @Nullable
+  public Object mark() {
+    return bindings.mark();
+  }
+
+  /**
+   * Restores the bindings of this {@code Unifier} to their state when {@code mark} was obtained
+   * from {@link #mark}.
+   */
+  public void rollback(@Nullable Object mark) {
+    bindings.rollback(mark);
+  }
+  
   public Types types() {
     return Types.instance(context);
   }
   
+  /**
+   * Returns whether the specified types are the same, as {@link Types#isSameType} determines.
+   */
+  public boolean isSameType(Type t1, Type t2) {
+    synchronized (SubContext.javacLock(context)) {
+      return types().isSameType(t1, t2);
+    }
+  }
+
   public JCExpression thisExpression(Type type) {
-    return TreeMaker.instance(context).This(type);
+    synchronized (SubContext.javacLock(context)) {
+      return TreeMaker.instance(context).This(type);
+    }
   }
   
   public Inliner createInliner() {
@@ -82,7 +125,15 @@ public final class Unifier {
 
   public <V> V putBinding(Key<V> key, V value) {
     checkArgument(!bindings.containsKey(key), "Cannot bind %s more than once", key);
-    return bindings.putBinding(key, value);
+    boolean localVariablesValid = localVariablesMark == bindings.mark();
+    V result = bindings.putBinding(key, value);
+    if (localVariablesValid) {
+      if (key instanceof ULocalVarIdent.Key) {
+        localVariables.add(((LocalVarBinding) value).getSymbol());
+      }
+      localVariablesMark = bindings.mark();
+    }
+    return result;
   }
 
   public <V> V replaceBinding(Key<V> key, V value) {
@@ -90,6 +141,25 @@ public final class Unifier {
     return bindings.putBinding(key, value);
   }
   
+  /**
+   * Returns whether the specified symbol is that of a local variable bound by this
+   * {@code Unifier}.  The set of bound local variables is maintained as bindings are added, and
+   * only recomputed after bindings are replaced or rolled back.
+   */
+  boolean isBoundLocalVariable(@Nullable Symbol symbol) {
+    Object mark = bindings.mark();
+    if (localVariablesMark != mark) {
+      localVariables.clear();
+      for (Map.Entry<Key<?>, Object> entry : bindings.entrySet()) {
+        if (entry.getKey() instanceof ULocalVarIdent.Key) {
+          localVariables.add(((LocalVarBinding) entry.getValue()).getSymbol());
+        }
+      }
+      localVariablesMark = mark;
+    }
+    return localVariables.contains(symbol);
+  }
+
   /**
    * Attempts to unify each each element of {@code toUnify} with the corresponding
    * element of {@code targets}.
@@ -130,11 +200,13 @@ public final class Unifier {
   private static <T, U extends Unifiable<? super T>> Unifier unifyRepeated (
       Unifier unifier, URepeated repeated, Iterator<? extends T> targetItr) {
     List<JCExpression> expressions = new ArrayList<>();
+    Object mark = unifier.mark();
     while (targetItr.hasNext()) {
-      // Unification of each target uses a fork of unifier, since one key can be bound only once.
-      Unifier forked = unifier.fork();
-      forked = repeated.unify((JCTree) (targetItr.next()), forked);
-      JCExpression boundExpr = repeated.getUnderlyingBinding(forked);
+      // Each target's bindings are rolled back after unification, since one key can be bound
+      // only once.
+      JCExpression boundExpr = 
+          repeated.getUnderlyingBinding(repeated.unify((JCTree) (targetItr.next()), unifier));
+      unifier.rollback(mark);
       if (boundExpr == null) {
         return null;
       }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.apply.DescriptionBasedDiff;
+import com.google.errorprone.apply.SourceFile;
+import com.google.testing.compile.JavaFileObjects;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.util.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Tests for {@link BatchRefactorer}.
+ */
+@RunWith(JUnit4.class)
+public class BatchRefactorerTest {
+  private final Set<Context> contexts = Sets.newIdentityHashSet();
+  private final Map<String, String> refactored = new LinkedHashMap<>();
+
+  private void refactor(int batchSize, JavaFileObject... sources) throws IOException {
+    refactor(new ExampleTemplates.NoOpTransformer() {
+      @Override
+      public void apply(CompilationUnitTree tree, Context context, DescriptionListener listener) {
+        contexts.add(context);
+      }
+    }, batchSize, sources);
+  }
+
+  private void refactor(CodeTransformer transformer, int batchSize, JavaFileObject... sources)
+      throws IOException {
+    BatchRefactorer.create(transformer, ImmutableList.<String>of(), batchSize).refactor(
+        ImmutableList.copyOf(sources),
+        new BatchRefactorer.DiffListener() {
+          @Override
+          public void onDiff(JavaFileObject source, DescriptionBasedDiff diff)
+              throws IOException {
+            SourceFile sourceFile = SourceFile.create(source);
+            diff.applyDifferences(sourceFile);
+            refactored.put(source.getName(), sourceFile.getSourceText());
+          }
+        });
+  }
+
+  @Test
+  public void compilesInBatches() throws IOException {
+    refactor(2,
+        JavaFileObjects.forSourceLines("A", "class A {}"),
+        JavaFileObjects.forSourceLines("B", "class B {}"),
+        JavaFileObjects.forSourceLines("C", "class C {}"));
+    assertEquals(3, refactored.size());
+    assertEquals(2, contexts.size());
+  }
+
+  @Test
+  public void skipsSourcesWithErrors() throws IOException {
+    refactor(2,
+        JavaFileObjects.forSourceLines("A", "class A {}"),
+        JavaFileObjects.forSourceLines("D", "class D { Missing m; }"));
+    assertEquals(1, refactored.size());
+  }
+
+  @Test
+  public void refactorsSourcesAfterOneWithErrors() throws IOException {
+    CodeTransformer rule = RefasterRule.create("com.example.OnePlus",
+        ImmutableList.of(ExampleTemplates.plusOne()), ExampleTemplates.onePlus());
+    JavaFileObject broken = JavaFileObjects.forSourceLines("D",
+        "class D {",
+        "  Missing m;",
+        "  int f(int x) { return x + 1; }",
+        "}");
+    JavaFileObject valid = JavaFileObjects.forSourceLines("A",
+        "class A {",
+        "  int f(int x) { return x + 1; }",
+        "}");
+    refactor(rule, 2, broken, valid);
+    assertEquals(ImmutableSet.of(valid.getName()), refactored.keySet());
+    assertTrue(refactored.get(valid.getName()).contains("return 1 + x;"));
+  }
+}
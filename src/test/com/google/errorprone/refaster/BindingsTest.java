@@ -16,6 +16,12 @@
 
 package com.google.errorprone.refaster;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
 import com.google.common.testing.EqualsTester;
 
 import org.junit.Test;
@@ -54,4 +60,57 @@ public class BindingsTest {
       .addEqualityGroup(new OtherKey("foo"))
       .testEquals();
   }
+  
+  @Test
+  public void testCopiesIndependent() {
+    Bindings original = Bindings.create(new Key("foo"), "a");
+    Bindings copy = Bindings.create(original);
+    copy.putBinding(new Key("bar"), "b");
+    original.putBinding(new Key("foo"), "c");
+    assertEquals(ImmutableMap.of(new Key("foo"), "c"), original);
+    assertEquals(ImmutableMap.of(new Key("foo"), "a", new Key("bar"), "b"), copy);
+  }
+  
+  @Test
+  public void testSnapshotUnaffectedByChanges() {
+    Bindings bindings = Bindings.create(new Key("foo"), "a");
+    Bindings snapshot = bindings.snapshot();
+    bindings.putBinding(new Key("foo"), "b");
+    bindings.remove(new OtherKey("foo"));
+    assertEquals("a", snapshot.getBinding(new Key("foo")));
+    assertEquals("b", bindings.getBinding(new Key("foo")));
+    assertNull(bindings.getBinding(new OtherKey("foo")));
+  }
+  
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSnapshotImmutable() {
+    Bindings.create().snapshot().putBinding(new Key("foo"), "a");
+  }
+  
+  @Test
+  public void testRollback() {
+    Bindings bindings = Bindings.create(new Key("foo"), "a");
+    Object mark = bindings.mark();
+    bindings.putBinding(new Key("bar"), "b");
+    bindings.putBinding(new Key("foo"), "c");
+    bindings.rollback(mark);
+    assertEquals(ImmutableMap.of(new Key("foo"), "a"), bindings);
+  }
+  
+  @Test
+  public void testRawValueTypes() {
+    for (Bindings.Key<?> key : ImmutableList.<Bindings.Key<?>>of(
+        new Key("foo"),
+        new UFreeIdent.Key("foo"),
+        new ULocalVarIdent.Key("foo"),
+        new UTypeVar.Key("foo"),
+        new URepeated.Key("foo"))) {
+      Class<?> expected =
+          TypeToken.of(key.getClass()).resolveType(Bindings.Key.class.getTypeParameters()[0])
+              .getRawType();
+      // the second call reads the memoized type
+      assertEquals(expected, key.getRawValueType());
+      assertEquals(expected, key.getRawValueType());
+    }
+  }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link ClassSymbolCache}.
+ */
+@RunWith(JUnit4.class)
+public class ClassSymbolCacheTest extends AbstractUTreeTest {
+  @Test
+  public void resolvesOnce() throws CouldNotResolveImportException {
+    ClassSymbol sym = ClassSymbolCache.instance(context).resolve(context, "java.lang.String");
+    assertEquals("java.lang.String", sym.getQualifiedName().toString());
+    assertSame(sym, inliner.resolveClass("java.lang.String"));
+    Context subContext = new SubContext(context);
+    assertSame(sym, ClassSymbolCache.instance(subContext).resolve(subContext, "java.lang.String"));
+  }
+
+  @Test
+  public void remembersFailures() {
+    for (int i = 0; i < 2; i++) {
+      try {
+        inliner.resolveClass("com.example.DoesNotExist");
+        fail("Expected CouldNotResolveImportException");
+      } catch (CouldNotResolveImportException expected) {
+      }
+    }
+  }
+
+  /**
+   * A compiler with a context of its own, counting the names it resolves.
+   */
+  private static final class CountingCompiler extends JavaCompiler {
+    int resolutions;
+
+    CountingCompiler(Context context) {
+      super(context);
+    }
+
+    void registerIn(Context context) {
+      context.put(compilerKey, (JavaCompiler) this);
+    }
+
+    @Override
+    public Symbol resolveIdent(String name) {
+      resolutions++;
+      return super.resolveIdent(name);
+    }
+  }
+
+  @Test
+  public void keepsTheClassesOfEachCompilerApart() throws CouldNotResolveImportException {
+    ClassSymbol sym = ClassSymbolCache.instance(context).resolve(context, "java.lang.String");
+    Context compilerContext = new Context();
+    JavacFileManager.preRegister(compilerContext);
+    CountingCompiler compiler = new CountingCompiler(compilerContext);
+    Context subContext = new SubContext(context);
+    compiler.registerIn(subContext);
+    for (int i = 0; i < 2; i++) {
+      ClassSymbol other =
+          ClassSymbolCache.instance(subContext).resolve(subContext, "java.lang.String");
+      assertEquals("java.lang.String", other.getQualifiedName().toString());
+      assertNotSame(sym, other);
+    }
+    assertEquals(1, compiler.resolutions);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.matchers.Description;
+
+import com.sun.source.tree.Tree.Kind;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link CommentIndex}.
+ */
+@RunWith(JUnit4.class)
+public class CommentIndexTest extends CompilerBasedTest {
+  @Test
+  public void findsComments() {
+    compile(
+        "class CommentIndexExample {",
+        "  String example() {",
+        "    String a = \"// not a comment\" + '\"' + \"/* nor this */\";",
+        "    String b = a /* inline */ + a;",
+        "    String c = a // trailing",
+        "        + a;",
+        "    String d = \"\\\"//\";",
+        "    return a + b + c + d;",
+        "  }",
+        "}");
+    JCCompilationUnit unit = Iterables.getOnlyElement(compilationUnits);
+    JCMethodDecl method = getMethodDeclaration("example");
+    CommentIndex index = CommentIndex.instance(context);
+
+    assertFalse(containsComment(index, unit, method.getBody().getStatements().get(0)));
+    assertTrue(containsComment(index, unit, method.getBody().getStatements().get(1)));
+    assertTrue(containsComment(index, unit, method.getBody().getStatements().get(2)));
+    assertFalse(containsComment(index, unit, method.getBody().getStatements().get(3)));
+    assertFalse(containsComment(index, unit, method.getBody().getStatements().get(4)));
+  }
+
+  @Test
+  public void rejectsBlockMatchesWithCommentsInLaterStatements() {
+    compile(
+        "class CommentIndexExample {",
+        "  void commented(int i) {",
+        "    i++;",
+        "    i /* last */ ++;",
+        "  }",
+        "  void uncommented(int j) {",
+        "    j++;",
+        "    j++;",
+        "  }",
+        "}");
+    UStatement increment = UExpressionStatement.create(
+        UUnary.create(Kind.POSTFIX_INCREMENT, UFreeIdent.create("x")));
+    BlockTemplate template =
+        BlockTemplate.create(ImmutableMap.of("x", UPrimitiveType.INT), increment, increment);
+    RefasterRule<?, ?> rule = RefasterRule.create(
+        "com.example.DoubleIncrement", ImmutableList.of(template), null);
+
+    final List<Description> descriptions = new ArrayList<>();
+    rule.apply(Iterables.getOnlyElement(compilationUnits), context, new DescriptionListener() {
+      @Override
+      public void onDescribed(Description description) {
+        descriptions.add(description);
+      }
+    });
+    assertEquals(1, descriptions.size());
+  }
+
+  private static boolean containsComment(
+      CommentIndex index, JCCompilationUnit unit, JCTree tree) {
+    return index.containsComment(
+        unit, tree.getStartPosition(), tree.getEndPosition(unit.endPositions));
+  }
+}
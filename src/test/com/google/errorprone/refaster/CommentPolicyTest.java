@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.Iterables;
+import com.google.testing.compile.JavaFileObjects;
+
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Tests for {@link CommentPolicy}.
+ */
+@RunWith(JUnit4.class)
+public class CommentPolicyTest extends CompilerBasedTest {
+  @Test
+  public void rejectsByDefault() {
+    compile("class CommentPolicyExample {}");
+    assertEquals(CommentPolicy.REJECT_MATCHES_WITH_COMMENTS,
+        CommentPolicy.instance(new SubContext(context)));
+  }
+
+  @Test
+  public void preservedComments() {
+    compile(
+        "class CommentPolicyExample {",
+        "  String example(String a) {",
+        "    String b = a /* inline */ + a;",
+        "    String c = a // trailing */",
+        "        + b;",
+        "    return c;",
+        "  }",
+        "}");
+    JCCompilationUnit unit = Iterables.getOnlyElement(compilationUnits);
+    JCBlock body = getMethodDeclaration("example").getBody();
+    Context ruleContext = new SubContext(context);
+    ruleContext.put(JCCompilationUnit.class, unit);
+    CommentPolicy.bind(ruleContext, CommentPolicy.PRESERVE_COMMENTS);
+
+    CommentPolicy policy = CommentPolicy.instance(ruleContext);
+    assertEquals("/* inline */ ", policy.preservedComments(
+        ruleContext, body.getStatements().get(0), body.getStatements().get(0)));
+    assertEquals("/* inline */ /* trailing * / */ ", policy.preservedComments(
+        ruleContext, body.getStatements().get(0), body.getStatements().get(1)));
+    assertEquals("", policy.preservedComments(
+        ruleContext, body.getStatements().get(2), body.getStatements().get(2)));
+    assertEquals("", CommentPolicy.IGNORE_COMMENTS.preservedComments(
+        ruleContext, body.getStatements().get(0), body.getStatements().get(1)));
+  }
+
+  @Test
+  public void preservesCommentsInReplacement() throws IOException {
+    RefasterRule<?, ?> rule = extractRule(
+        "import com.google.errorprone.refaster.CommentPolicy;",
+        "import com.google.errorprone.refaster.annotation.AfterTemplate;",
+        "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+        "import com.google.errorprone.refaster.annotation.UseCommentPolicy;",
+        "@UseCommentPolicy(CommentPolicy.PRESERVE_COMMENTS)",
+        "class AddZero {",
+        "  @BeforeTemplate int before(int a) {",
+        "    return a + 0;",
+        "  }",
+        "  @AfterTemplate int after(int a) {",
+        "    return a;",
+        "  }",
+        "}");
+    assertEquals(CommentPolicy.PRESERVE_COMMENTS, rule.commentPolicy());
+    assertEquals(
+        "    int j = /* zero */ i;",
+        transformedLine(rule, 2,
+            "class Example {",
+            "  void example(int i) {",
+            "    int j = i /* zero */ + 0;",
+            "  }",
+            "}"));
+  }
+
+  @Test
+  public void preservesCommentsInDeletion() throws IOException {
+    RefasterRule<?, ?> rule = extractRule(
+        "import com.google.errorprone.refaster.CommentPolicy;",
+        "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+        "import com.google.errorprone.refaster.annotation.UseCommentPolicy;",
+        "@UseCommentPolicy(CommentPolicy.PRESERVE_COMMENTS)",
+        "class IncrementAndDecrement {",
+        "  @BeforeTemplate void before(int a) {",
+        "    a++;",
+        "    a--;",
+        "  }",
+        "}");
+    assertEquals(CommentPolicy.PRESERVE_COMMENTS, rule.commentPolicy());
+    // The first statement of the match is replaced by the comments within the statements, and
+    // the rest are deleted, leaving the comment between them in place.
+    String transformed = transformed(rule,
+        "class Example {",
+        "  void example(int i) {",
+        "    i++; // up",
+        "    i /* down */ --;",
+        "    i = 0;",
+        "  }",
+        "}");
+    assertEquals("    /* down */ // up", transformed.split("\n")[2]);
+    assertEquals("    i = 0;", transformed.split("\n")[4]);
+  }
+
+  private RefasterRule<?, ?> extractRule(String... lines) {
+    compile(lines);
+    JCClassDecl classDecl = Iterables.getOnlyElement(Iterables.filter(
+        Iterables.getOnlyElement(compilationUnits).getTypeDecls(), JCClassDecl.class));
+    return (RefasterRule<?, ?>)
+        Iterables.getOnlyElement(RefasterRuleBuilderScanner.extractRules(classDecl, context));
+  }
+
+  private static String transformed(RefasterRule<?, ?> rule, String... lines)
+      throws IOException {
+    JavaFileObject output = CodeTransformerTestHelper.create(rule)
+        .transform(JavaFileObjects.forSourceLines("Example", lines));
+    return output.getCharContent(false).toString();
+  }
+
+  private static String transformedLine(RefasterRule<?, ?> rule, int line, String... lines)
+      throws IOException {
+    return transformed(rule, lines).split("\n")[line];
+  }
+}
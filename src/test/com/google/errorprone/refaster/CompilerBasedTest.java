@@ -52,7 +52,7 @@ public class CompilerBasedTest {
   protected Iterable<JCCompilationUnit> compilationUnits;
   private Map<String, JCMethodDecl> methods;
   
-  protected void compile(TreeScanner scanner, JavaFileObject fileObject) {
+  protected void compile(TreeScanner scanner, JavaFileObject... fileObjects) {
     JavaCompiler compiler = JavacTool.create();
     DiagnosticCollector<JavaFileObject> diagnosticsCollector =
         new DiagnosticCollector<JavaFileObject>();
@@ -63,9 +63,9 @@ public class CompilerBasedTest {
         diagnosticsCollector,
         ImmutableList.<String>of(),
         null,
-        ImmutableList.of(fileObject));
+        ImmutableList.copyOf(fileObjects));
     try {
-      this.sourceFile = SourceFile.create(fileObject);
+      this.sourceFile = SourceFile.create(fileObjects[0]);
       Iterable<? extends CompilationUnitTree> trees = task.parse();
       task.analyze();
       for (CompilationUnitTree tree : trees) {
@@ -81,7 +81,7 @@ public class CompilerBasedTest {
     compile(scanner, JavaFileObjects.forSourceLines("CompilerBasedTestInput", lines));
   }
 
-  protected void compile(JavaFileObject fileObject) {
+  protected void compile(JavaFileObject... fileObjects) {
     final ImmutableMap.Builder<String, JCMethodDecl> methodsBuilder = ImmutableMap.builder();
     final ImmutableList.Builder<JCCompilationUnit> compilationUnitsBuilder = 
         ImmutableList.builder();
@@ -96,7 +96,7 @@ public class CompilerBasedTest {
         compilationUnitsBuilder.add(tree);
         super.visitTopLevel(tree);
       }
-    }, fileObject);
+    }, fileObjects);
     this.methods = methodsBuilder.build();
     this.compilationUnits = compilationUnitsBuilder.build();
   }
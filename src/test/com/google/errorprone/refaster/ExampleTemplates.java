@@ -0,0 +1,90 @@
+/*
+ * Copyright 2026 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import com.google.common.collect.ImmutableClassToInstanceMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.DescriptionListener;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.tools.javac.util.Context;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Templates and transformers shared by tests which need a simple rule but do not test templates
+ * themselves.  Each template has a single {@code int} argument {@code a}.
+ */
+final class ExampleTemplates {
+  private ExampleTemplates() {}
+
+  /**
+   * Returns a new template matching {@code a + 1} of type {@code int}.
+   */
+  static ExpressionTemplate plusOne() {
+    return intTemplate(UBinary.create(Kind.PLUS, UFreeIdent.create("a"), ULiteral.intLit(1)));
+  }
+
+  /**
+   * Returns a new template matching {@code 1 + a} of type {@code int}.
+   */
+  static ExpressionTemplate onePlus() {
+    return intTemplate(UBinary.create(Kind.PLUS, ULiteral.intLit(1), UFreeIdent.create("a")));
+  }
+
+  /**
+   * Returns a new template matching {@code ++a} of type {@code int}.
+   */
+  static ExpressionTemplate increment() {
+    return intTemplate(UUnary.create(Kind.PREFIX_INCREMENT, UFreeIdent.create("a")));
+  }
+
+  /**
+   * Returns a new template matching {@code a * 2} of type {@code int}.
+   */
+  static ExpressionTemplate timesTwo() {
+    return intTemplate(
+        UBinary.create(Kind.MULTIPLY, UFreeIdent.create("a"), ULiteral.intLit(2)));
+  }
+
+  /**
+   * Returns a new template matching {@code a << 1} of type {@code int}.
+   */
+  static ExpressionTemplate shiftLeft() {
+    return intTemplate(
+        UBinary.create(Kind.LEFT_SHIFT, UFreeIdent.create("a"), ULiteral.intLit(1)));
+  }
+
+  private static ExpressionTemplate intTemplate(UExpression expression) {
+    return ExpressionTemplate.create(
+        ImmutableMap.of("a", UPrimitiveType.INT), expression, UPrimitiveType.INT);
+  }
+
+  /**
+   * A transformer without annotations which does nothing, for tests to override {@link #apply}.
+   */
+  static class NoOpTransformer implements CodeTransformer {
+    @Override
+    public void apply(CompilationUnitTree tree, Context context, DescriptionListener listener) {}
+
+    @Override
+    public ImmutableClassToInstanceMap<Annotation> annotations() {
+      return ImmutableClassToInstanceMap.<Annotation>builder().build();
+    }
+  }
+}
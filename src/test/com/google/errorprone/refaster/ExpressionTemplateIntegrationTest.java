@@ -21,6 +21,7 @@ import static com.google.common.truth.Truth.assert_;
 import static com.google.testing.compile.JavaSourceSubjectFactory.javaSource;
 
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.testing.compile.JavaFileObjects;
 
@@ -31,6 +32,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import javax.tools.JavaFileObject;
@@ -50,6 +53,22 @@ public class ExpressionTemplateIntegrationTest extends CompilerBasedTest {
     return Iterables.getOnlyElement(RefasterRuleBuilderScanner.extractRules(classDecl, context));
   }
   
+  private ImmutableList<RefasterRule<?, ?>> extractRefasterRules(JavaFileObject object) {
+    compile(object);
+    JCCompilationUnit compilationUnit = Iterables.getOnlyElement(compilationUnits);
+    JCClassDecl classDecl = FluentIterable.from(compilationUnit.getTypeDecls())
+        .filter(JCClassDecl.class).getOnlyElement();
+    ImmutableList.Builder<RefasterRule<?, ?>> rules = ImmutableList.builder();
+    for (CodeTransformer rule : RefasterRuleBuilderScanner.extractRules(classDecl, context)) {
+      rules.add((RefasterRule<?, ?>) rule);
+    }
+    return rules.build();
+  }
+
+  private CodeTransformer extractRefasterRuleSet(JavaFileObject object) {
+    return RefasterRuleSet.create(extractRefasterRules(object));
+  }
+  
   private void expectTransforms(CodeTransformer transformer, JavaFileObject input,
       JavaFileObject expectedOutput) throws IOException {
     JavaFileObject transformedInput = 
@@ -112,4 +131,52 @@ public class ExpressionTemplateIntegrationTest extends CompilerBasedTest {
         JavaFileObjects.forResource(OUTPUT_DIR + "/MethodInvocationTemplateExample.java");
     expectTransforms(transformer, input, output);
   }
+  
+  @Test
+  public void ruleSet() throws IOException {
+    CodeTransformer transformer = extractRefasterRuleSet(
+        JavaFileObjects.forResource(TEMPLATE_DIR + "/MethodInvocationTemplate.java"));
+    
+    JavaFileObject input = 
+        JavaFileObjects.forResource(INPUT_DIR + "/MethodInvocationTemplateExample.java");
+    JavaFileObject output = 
+        JavaFileObjects.forResource(OUTPUT_DIR + "/MethodInvocationTemplateExample.java");
+    expectTransforms(transformer, input, output);
+  }
+
+  @Test
+  public void ruleIndex() throws IOException {
+    RuleIndex index = RuleIndex.create(extractRefasterRules(
+        JavaFileObjects.forResource(TEMPLATE_DIR + "/MethodInvocationTemplate.java")));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    index.write(out);
+    CodeTransformer transformer = RuleIndex.read(new ByteArrayInputStream(out.toByteArray()));
+
+    JavaFileObject input = 
+        JavaFileObjects.forResource(INPUT_DIR + "/MethodInvocationTemplateExample.java");
+    JavaFileObject output = 
+        JavaFileObjects.forResource(OUTPUT_DIR + "/MethodInvocationTemplateExample.java");
+    expectTransforms(transformer, input, output);
+  }
+
+  @Test
+  public void ruleIndexLoadsRulesLazily() throws IOException {
+    RuleIndex written = RuleIndex.create(extractRefasterRules(
+        JavaFileObjects.forResource(TEMPLATE_DIR + "/MethodInvocationTemplate.java")));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    written.write(out);
+    RuleIndex index = RuleIndex.read(new ByteArrayInputStream(out.toByteArray()));
+
+    // never references digest or getBytes
+    JavaFileObject unrelated =
+        JavaFileObjects.forResource(INPUT_DIR + "/BinaryTemplateExample.java");
+    expectTransforms(index, unrelated, unrelated);
+    assertThat(index.loadedTemplateClasses()).isEmpty();
+
+    expectTransforms(index,
+        JavaFileObjects.forResource(INPUT_DIR + "/MethodInvocationTemplateExample.java"),
+        JavaFileObjects.forResource(OUTPUT_DIR + "/MethodInvocationTemplateExample.java"));
+    assertThat(index.loadedTemplateClasses()).containsExactly(
+        "com.google.errorprone.refaster.testdata.template.MethodInvocationTemplate");
+  }
 }
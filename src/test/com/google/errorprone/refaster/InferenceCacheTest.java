@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertSame;
+
+import com.google.common.testing.EqualsTester;
+
+import com.sun.tools.javac.code.Symtab;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link InferenceCache}.
+ */
+@RunWith(JUnit4.class)
+public class InferenceCacheTest extends AbstractUTreeTest {
+  @Test
+  public void sharedAcrossSubContexts() {
+    assertSame(InferenceCache.instance(context), 
+        InferenceCache.instance(new SubContext(new SubContext(context))));
+  }
+
+  @Test
+  public void keyEquality() {
+    Symtab symtab = Symtab.instance(context);
+    InferenceCache cache = InferenceCache.instance(context);
+    Template<?> template = ExpressionTemplate.create(UFreeIdent.create("x"), UPrimitiveType.INT);
+    Template<?> equalTemplate = 
+        ExpressionTemplate.create(UFreeIdent.create("x"), UPrimitiveType.INT);
+    List<Type> noBindings = List.nil();
+    new EqualsTester()
+        .addEqualityGroup(
+            cache.key(template, noBindings, List.of(symtab.stringType)),
+            cache.key(template, noBindings, List.of(symtab.stringType)))
+        .addEqualityGroup(cache.key(template, noBindings, List.of(symtab.objectType)))
+        .addEqualityGroup(cache.key(template, noBindings, List.<Type>of(null)))
+        .addEqualityGroup(
+            cache.key(template, List.of(symtab.objectType), List.of(symtab.stringType)))
+        .addEqualityGroup(cache.key(equalTemplate, noBindings, List.of(symtab.stringType)))
+        .testEquals();
+  }
+}
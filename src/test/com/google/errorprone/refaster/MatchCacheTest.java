@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Tests for {@link MatchCache}.
+ */
+@RunWith(JUnit4.class)
+public class MatchCacheTest {
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final String RULES = MatchCache.rulesFingerprint(new byte[] {1, 2, 3});
+  private static final String CLASSPATH =
+      MatchCache.classpathFingerprint(ImmutableList.<File>of());
+
+  @Test
+  public void keys() {
+    String key = MatchCache.key("class A {}", RULES, CLASSPATH);
+    assertEquals(key, MatchCache.key("class A {}", RULES, CLASSPATH));
+    assertFalse(key.equals(MatchCache.key("class B {}", RULES, CLASSPATH)));
+    assertFalse(key.equals(MatchCache.key(
+        "class A {}", MatchCache.rulesFingerprint(new byte[] {1, 2}), CLASSPATH)));
+  }
+
+  @Test
+  public void keysSeparateFields() {
+    assertFalse(
+        MatchCache.key("ab", "c", CLASSPATH).equals(MatchCache.key("a", "bc", CLASSPATH)));
+  }
+
+  @Test
+  public void fingerprintsDirectoryContents() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    File classFile = new File(directory, "A.class");
+    Files.write(new byte[] {1, 2, 3}, classFile);
+    String fingerprint = MatchCache.classpathFingerprint(ImmutableList.of(directory));
+    assertEquals(fingerprint, MatchCache.classpathFingerprint(ImmutableList.of(directory)));
+    Files.write(new byte[] {1, 2, 3, 4}, classFile);
+    assertFalse(
+        fingerprint.equals(MatchCache.classpathFingerprint(ImmutableList.of(directory))));
+  }
+
+  @Test
+  public void persists() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    String unchanged = MatchCache.key("class A {}", RULES, CLASSPATH);
+    String refactored = MatchCache.key("class B { int x = 1 + 1; }", RULES, CLASSPATH);
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      assertEquals(Optional.absent(), cache.get(unchanged));
+      cache.put(unchanged, Optional.<String>absent());
+      cache.put(refactored, Optional.of("class B { int x = 2; }"));
+      assertEquals(Optional.of(Optional.<String>absent()), cache.get(unchanged));
+    }
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      assertEquals(Optional.of(Optional.<String>absent()), cache.get(unchanged));
+      assertEquals(
+          Optional.of(Optional.of("class B { int x = 2; }")), cache.get(refactored));
+    }
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    String first = MatchCache.key("class A {}", RULES, CLASSPATH);
+    String second = MatchCache.key("class B {}", RULES, CLASSPATH);
+    String third = MatchCache.key("class C {}", RULES, CLASSPATH);
+    try (MatchCache cache = MatchCache.open(directory, 600)) {
+      cache.put(first, Optional.<String>absent());
+      cache.put(second, Optional.<String>absent());
+      cache.get(first);
+      cache.put(third, Optional.<String>absent());
+      assertEquals(Optional.of(Optional.<String>absent()), cache.get(first));
+      assertEquals(Optional.absent(), cache.get(second));
+      assertEquals(Optional.of(Optional.<String>absent()), cache.get(third));
+    }
+    try (MatchCache cache = MatchCache.open(directory, 600)) {
+      assertEquals(Optional.absent(), cache.get(second));
+      assertEquals(Optional.of(Optional.<String>absent()), cache.get(first));
+    }
+  }
+
+  @Test
+  public void truncatesIncompleteResult() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    String key = MatchCache.key("class A {}", RULES, CLASSPATH);
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      cache.put(key, Optional.of("class A { }"));
+    }
+    File log = directory.listFiles()[0];
+    try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+      file.seek(file.length());
+      file.writeUTF("partial");
+    }
+    String other = MatchCache.key("class B {}", RULES, CLASSPATH);
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      assertEquals(Optional.of(Optional.of("class A { }")), cache.get(key));
+      cache.put(other, Optional.<String>absent());
+    }
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      assertEquals(Optional.of(Optional.of("class A { }")), cache.get(key));
+      assertEquals(Optional.of(Optional.<String>absent()), cache.get(other));
+    }
+  }
+
+  @Test
+  public void truncatesAtInvalidResultLength() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    String key = MatchCache.key("class A {}", RULES, CLASSPATH);
+    String corrupt = MatchCache.key("class B {}", RULES, CLASSPATH);
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      cache.put(key, Optional.of("class A { }"));
+    }
+    File log = directory.listFiles()[0];
+    long validLength = log.length();
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      cache.put(corrupt, Optional.of("class B { }"));
+    }
+    try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+      file.seek(validLength + 2 + corrupt.length());
+      file.writeInt(-2);
+    }
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      assertEquals(Optional.of(Optional.of("class A { }")), cache.get(key));
+      assertEquals(Optional.absent(), cache.get(corrupt));
+    }
+    assertEquals(validLength, log.length());
+  }
+
+  @Test
+  public void truncatesAtMalformedKey() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    String key = MatchCache.key("class A {}", RULES, CLASSPATH);
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      cache.put(key, Optional.<String>absent());
+    }
+    File log = directory.listFiles()[0];
+    long validLength = log.length();
+    try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+      file.seek(validLength);
+      // a key of two bytes that are not valid modified UTF-8
+      file.write(new byte[] {0, 2, (byte) 0xff, (byte) 0xff, 0, 0, 0, 0});
+    }
+    try (MatchCache cache = MatchCache.open(directory, 1 << 20)) {
+      assertEquals(Optional.of(Optional.<String>absent()), cache.get(key));
+    }
+    assertEquals(validLength, log.length());
+  }
+}
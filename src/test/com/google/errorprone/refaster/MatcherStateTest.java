@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.Iterables;
+import com.google.errorprone.VisitorState;
+
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.tree.JCTree.JCBinary;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCReturn;
+import com.sun.tools.javac.util.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link MatcherState}.
+ */
+@RunWith(JUnit4.class)
+public class MatcherStateTest extends CompilerBasedTest {
+  @Test
+  public void extendsMatchPath() {
+    compile(
+        "class MatcherStateExample {",
+        "  int example(int x) {",
+        "    return x + 1;",
+        "  }",
+        "}");
+    JCCompilationUnit unit = Iterables.getOnlyElement(compilationUnits);
+    JCMethodDecl method = getMethodDeclaration("example");
+    JCReturn ret = (JCReturn) method.getBody().getStatements().get(0);
+    JCBinary sum = (JCBinary) ret.getExpression();
+
+    Context ruleContext = new SubContext(context);
+    ruleContext.put(JCCompilationUnit.class, unit);
+    MatcherState matcherState = MatcherState.instance(ruleContext);
+    TreePath matchPath = TreePath.getPath(unit, ret);
+    matcherState.setMatchPath(matchPath);
+
+    VisitorState state = matcherState.forTarget(sum.getLeftOperand(), ruleContext);
+    assertSame(sum.getLeftOperand(), state.getPath().getLeaf());
+    assertSame(sum, state.getPath().getParentPath().getLeaf());
+    assertSame(matchPath, state.getPath().getParentPath().getParentPath());
+    assertSame(state, matcherState.forTarget(sum.getLeftOperand(), ruleContext));
+
+    matcherState.setMatchPath(null);
+    state = matcherState.forTarget(sum.getLeftOperand(), ruleContext);
+    assertSame(unit, state.getPath().getCompilationUnit());
+    assertSame(ret, state.getPath().getParentPath().getParentPath().getLeaf());
+  }
+}
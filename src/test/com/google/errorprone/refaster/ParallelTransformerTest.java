@@ -0,0 +1,161 @@
+/*
+ * Copyright 2026 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Multiset;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.matchers.Description;
+import com.google.testing.compile.JavaFileObjects;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.util.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Tests for {@link ParallelTransformer}.
+ */
+@RunWith(JUnit4.class)
+public class ParallelTransformerTest extends CompilerBasedTest {
+  @Test
+  public void appliesInSubContext() {
+    compile("class ParallelTransformerExample {}");
+    final CompilationUnitTree unit = Iterables.getOnlyElement(compilationUnits);
+    final DescriptionListener listener = new DescriptionListener() {
+      @Override
+      public void onDescribed(Description description) {}
+    };
+    final List<Context> contexts = new CopyOnWriteArrayList<>();
+    CodeTransformer transformer = new ExampleTemplates.NoOpTransformer() {
+      @Override
+      public void apply(CompilationUnitTree tree, Context context, DescriptionListener l) {
+        assertSame(unit, tree);
+        assertSame(listener, l);
+        contexts.add(context);
+      }
+    };
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      ParallelTransformer.create(transformer, pool).apply(
+          compilationUnits, context, new Function<CompilationUnitTree, DescriptionListener>() {
+            @Override
+            public DescriptionListener apply(CompilationUnitTree tree) {
+              return listener;
+            }
+          });
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(1, contexts.size());
+    assertNotSame(context, contexts.get(0));
+    assertSame(context, SubContext.root(contexts.get(0)));
+  }
+
+  @Test
+  public void preparesRootBeforeTransforming() {
+    compile("class ParallelTransformerExample {}");
+    final List<Object> rootInstances = new CopyOnWriteArrayList<>();
+    CodeTransformer transformer = new ExampleTemplates.NoOpTransformer() {
+      @Override
+      public void apply(CompilationUnitTree tree, Context context, DescriptionListener listener) {
+        Context root = SubContext.root(context);
+        rootInstances.add(root.get(InferenceCache.class));
+        rootInstances.add(root.get(ClassSymbolCache.class));
+      }
+    };
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      ParallelTransformer.create(transformer, pool).apply(
+          compilationUnits, context, new Function<CompilationUnitTree, DescriptionListener>() {
+            @Override
+            public DescriptionListener apply(CompilationUnitTree tree) {
+              return new DescriptionListener() {
+                @Override
+                public void onDescribed(Description description) {}
+              };
+            }
+          });
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(ImmutableList.<Object>of(
+        InferenceCache.instance(context), ClassSymbolCache.instance(context)), rootInstances);
+  }
+
+  @Test
+  public void appliesRulesConcurrently() {
+    int units = 8;
+    JavaFileObject[] sources = new JavaFileObject[units];
+    for (int i = 0; i < units; i++) {
+      sources[i] = JavaFileObjects.forSourceLines("Example" + i,
+          "class Example" + i + " {",
+          "  int plusOne" + i + "(int x) {",
+          "    return x + 1;",
+          "  }",
+          "  int twice" + i + "(int y) {",
+          "    return y * 2;",
+          "  }",
+          "}");
+    }
+    compile(sources);
+    CodeTransformer rules = RefasterRuleSet.create(ImmutableList.of(
+        RefasterRule.create("com.example.OnePlus", ImmutableList.of(ExampleTemplates.plusOne()), ExampleTemplates.onePlus()),
+        RefasterRule.create("com.example.ShiftLeft",
+            ImmutableList.of(ExampleTemplates.timesTwo()), ExampleTemplates.shiftLeft())));
+
+    final Multiset<CompilationUnitTree> descriptions = ConcurrentHashMultiset.create();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      ParallelTransformer.create(rules, pool).apply(
+          compilationUnits, context, new Function<CompilationUnitTree, DescriptionListener>() {
+            @Override
+            public DescriptionListener apply(final CompilationUnitTree tree) {
+              return new DescriptionListener() {
+                @Override
+                public void onDescribed(Description description) {
+                  descriptions.add(tree);
+                }
+              };
+            }
+          });
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(units, Iterables.size(compilationUnits));
+    for (CompilationUnitTree unit : compilationUnits) {
+      assertEquals(2, descriptions.count(unit));
+    }
+  }
+}
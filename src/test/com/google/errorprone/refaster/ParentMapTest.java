@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.Iterables;
+
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCReturn;
+import com.sun.tools.javac.tree.TreeMaker;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link ParentMap}.
+ */
+@RunWith(JUnit4.class)
+public class ParentMapTest extends CompilerBasedTest {
+  @Test
+  public void matchesTreePath() {
+    compile(
+        "class ParentMapExample {",
+        "  int example(int x) {",
+        "    return (x + 1) * 2;",
+        "  }",
+        "}");
+    JCCompilationUnit unit = Iterables.getOnlyElement(compilationUnits);
+    JCMethodDecl method = getMethodDeclaration("example");
+    JCReturn ret = (JCReturn) method.getBody().getStatements().get(0);
+
+    ParentMap parentMap = ParentMap.instance(context);
+    assertSame(parentMap, ParentMap.instance(new SubContext(context)));
+    assertSame(ret, parentMap.getParent(unit, ret.getExpression()));
+    assertNull(parentMap.getParent(unit, unit));
+
+    TreePath expected = TreePath.getPath(unit, ret.getExpression());
+    TreePath actual = parentMap.getPath(unit, ret.getExpression());
+    while (expected != null) {
+      assertSame(expected.getLeaf(), actual.getLeaf());
+      expected = expected.getParentPath();
+      actual = actual.getParentPath();
+    }
+    assertNull(actual);
+  }
+
+  @Test
+  public void unknownTree() {
+    compile("class ParentMapExample {}");
+    JCCompilationUnit unit = Iterables.getOnlyElement(compilationUnits);
+    Tree detached = TreeMaker.instance(context).Literal(1);
+    assertNull(ParentMap.instance(context).getPath(unit, detached));
+  }
+}
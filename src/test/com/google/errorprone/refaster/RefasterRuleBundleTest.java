@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableClassToInstanceMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import com.sun.source.tree.Tree.Kind;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+
+/**
+ * Tests for {@link RefasterRuleBundle}.
+ */
+@RunWith(JUnit4.class)
+public class RefasterRuleBundleTest {
+  @Test
+  public void roundTrip() throws IOException {
+    ExpressionTemplate plusOne = ExampleTemplates.plusOne();
+    ExpressionTemplate increment = ExampleTemplates.increment();
+    ImmutableList<RefasterRule<?, ?>> rules = ImmutableList.<RefasterRule<?, ?>>of(
+        RefasterRule.create("com.example.PlusOne", ImmutableList.of(plusOne), increment),
+        RefasterRule.create("com.example.DeletePlusOne", ImmutableList.of(plusOne), null));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RefasterRuleBundle.write(rules, out);
+    assertEquals(rules,
+        RefasterRuleBundle.read(new ByteArrayInputStream(out.toByteArray())));
+  }
+
+  @Test
+  public void keepsPropertiesOfTheSameTypeApart() throws IOException {
+    ExpressionTemplate choose = ExpressionTemplate.create(
+        ImmutableMap.of("a", UPrimitiveType.INT, "b", UPrimitiveType.INT),
+        UConditional.create(
+            UBinary.create(Kind.LESS_THAN, UFreeIdent.create("a"), UFreeIdent.create("b")),
+            UFreeIdent.create("b"),
+            UFreeIdent.create("a")),
+        UPrimitiveType.INT);
+    ImmutableList<RefasterRule<?, ?>> rules = ImmutableList.<RefasterRule<?, ?>>of(
+        RefasterRule.create("com.example.Max", ImmutableList.of(choose), null));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RefasterRuleBundle.write(rules, out);
+    assertEquals(rules,
+        RefasterRuleBundle.read(new ByteArrayInputStream(out.toByteArray())));
+  }
+
+  @Test
+  public void leavesTheRestOfTheStream() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RefasterRuleBundle.write(ImmutableList.of(RefasterRule.create(
+        "com.example.PlusOne", ImmutableList.of(ExampleTemplates.plusOne()), null)), out);
+    out.write(new byte[] {4, 2});
+
+    InputStream in = new ByteArrayInputStream(out.toByteArray());
+    assertEquals(1, RefasterRuleBundle.read(in).size());
+    assertEquals(4, in.read());
+    assertEquals(2, in.read());
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void sharesEqualNodes() throws IOException {
+    ImmutableList<RefasterRule<?, ?>> rules = ImmutableList.<RefasterRule<?, ?>>of(
+        RefasterRule.create(
+            "com.example.First", ImmutableList.of(ExampleTemplates.plusOne()), null),
+        RefasterRule.create(
+            "com.example.Second", ImmutableList.of(ExampleTemplates.plusOne()), null));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RefasterRuleBundle.write(rules, out);
+    ImmutableList<CodeTransformer> read =
+        RefasterRuleBundle.read(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(rules, read);
+    assertSame(((RefasterRule<?, ?>) read.get(0)).beforeTemplates().get(0),
+        ((RefasterRule<?, ?>) read.get(1)).beforeTemplates().get(0));
+  }
+
+  @Test
+  public void recursivelyBoundedTypeVariable() throws IOException {
+    // <T extends Comparable<T>>
+    UTypeVar typeVar = UTypeVar.create("T");
+    typeVar.setUpperBound(UClassType.create("java.lang.Comparable", typeVar));
+    ExpressionTemplate identity = ExpressionTemplate.create(
+        ImmutableClassToInstanceMap.<Annotation>builder().build(),
+        ImmutableList.of(typeVar),
+        ImmutableMap.of("a", typeVar),
+        UFreeIdent.create("a"),
+        typeVar);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RefasterRuleBundle.write(ImmutableList.of(
+        RefasterRule.create("com.example.Identity", ImmutableList.of(identity), null)), out);
+    RefasterRule<?, ?> rule = (RefasterRule<?, ?>)
+        RefasterRuleBundle.read(new ByteArrayInputStream(out.toByteArray())).get(0);
+    UTypeVar readTypeVar = rule.beforeTemplates().get(0).typeVariables().get(0);
+    assertEquals("T", readTypeVar.getName());
+    assertEquals(UPrimitiveType.NULL, readTypeVar.getLowerBound());
+    assertEquals("java.lang.Comparable",
+        ((UClassType) readTypeVar.getUpperBound()).fullyQualifiedClass());
+    assertSame(readTypeVar,
+        ((UClassType) readTypeVar.getUpperBound()).typeArguments().get(0));
+    assertSame(readTypeVar,
+        ((ExpressionTemplate) rule.beforeTemplates().get(0)).returnType());
+  }
+
+  @Test
+  public void rejectsOtherStreams() {
+    try {
+      RefasterRuleBundle.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+  }
+}
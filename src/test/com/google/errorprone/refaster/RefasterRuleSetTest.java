@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Multiset;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.matchers.Description;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link RefasterRuleSet}.
+ */
+@RunWith(JUnit4.class)
+public class RefasterRuleSetTest extends CompilerBasedTest {
+  private RefasterRule<?, ?> onePlus;
+  private RefasterRule<?, ?> shiftLeft;
+
+  @Before
+  public void createRules() {
+    onePlus = RefasterRule.create("com.example.OnePlus",
+        ImmutableList.of(ExampleTemplates.plusOne()), ExampleTemplates.onePlus());
+    shiftLeft = RefasterRule.create("com.example.ShiftLeft",
+        ImmutableList.of(ExampleTemplates.timesTwo()), ExampleTemplates.shiftLeft());
+  }
+
+  private Multiset<String> apply(CodeTransformer transformer) {
+    final Multiset<String> descriptions = HashMultiset.create();
+    transformer.apply(Iterables.getOnlyElement(compilationUnits), context,
+        new DescriptionListener() {
+          @Override
+          public void onDescribed(Description description) {
+            descriptions.add(description.message);
+          }
+        });
+    return descriptions;
+  }
+
+  @Test
+  public void appliesEveryRuleInOnePass() {
+    compile(
+        "package com.example;",
+        "class Example {",
+        "  int plusOne(int x) {",
+        "    return x + 1;",
+        "  }",
+        "  int twice(int y) {",
+        "    return (y + 1) * 2;",
+        "  }",
+        "}");
+    Multiset<String> descriptions =
+        apply(RefasterRuleSet.create(ImmutableList.of(onePlus, shiftLeft)));
+    assertEquals(2, descriptions.count("com.example.OnePlus"));
+    assertEquals(1, descriptions.count("com.example.ShiftLeft"));
+  }
+
+  @Test
+  public void excludesOwnTemplateClass() {
+    compile(
+        "package com.example;",
+        "class OnePlus {",
+        "  int plusOne(int x) {",
+        "    return x + 1;",
+        "  }",
+        "  int twice(int y) {",
+        "    return y * 2;",
+        "  }",
+        "}",
+        "class Other {",
+        "  int increment(int x) {",
+        "    return x + 1;",
+        "  }",
+        "}");
+    Multiset<String> descriptions =
+        apply(RefasterRuleSet.create(ImmutableList.of(onePlus, shiftLeft)));
+    assertEquals(1, descriptions.count("com.example.OnePlus"));
+    assertEquals(1, descriptions.count("com.example.ShiftLeft"));
+  }
+
+  @Test
+  public void ruleReusesItsRuleSet() {
+    compile(
+        "class Example {",
+        "  int plusOne(int x) {",
+        "    return x + 1;",
+        "  }",
+        "}");
+    RefasterRuleSet ruleSet = onePlus.ruleSet();
+    assertEquals(1, apply(onePlus).count("com.example.OnePlus"));
+    assertEquals(1, apply(onePlus).count("com.example.OnePlus"));
+    assertSame(ruleSet, onePlus.ruleSet());
+  }
+}
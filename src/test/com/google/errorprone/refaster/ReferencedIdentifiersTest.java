@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+
+import com.sun.source.tree.Tree.Kind;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link ReferencedIdentifiers}.
+ */
+@RunWith(JUnit4.class)
+public class ReferencedIdentifiersTest extends AbstractUTreeTest {
+  private static final UMethodType INDEX_OF_TYPE =
+      UMethodType.create(UPrimitiveType.INT, UPrimitiveType.INT);
+
+  @Test
+  public void memberSelectAndStaticIdent() {
+    UExpression template = UBinary.create(Kind.PLUS,
+        UMethodInvocation.create(
+            UMemberSelect.create(UFreeIdent.create("s"), "indexOf", INDEX_OF_TYPE),
+            UFreeIdent.create("c")),
+        UMethodInvocation.create(
+            UStaticIdent.create("java.lang.Integer", "valueOf",
+                UMethodType.create(UClassType.create("java.lang.Integer"), UPrimitiveType.INT)),
+            UFreeIdent.create("i")));
+    assertEquals(ImmutableSet.of("indexOf", "valueOf"),
+        ReferencedIdentifiers.requiredBy(template));
+  }
+
+  @Test
+  public void classIdentRequiresSimpleName() {
+    assertEquals(ImmutableSet.of("Entry"),
+        ReferencedIdentifiers.requiredBy(UClassIdent.create("java.util.Map.Entry")));
+  }
+
+  @Test
+  public void anyOfRequiresCommonIdentifiers() {
+    UExpression template = UAnyOf.create(
+        UMethodInvocation.create(
+            UMemberSelect.create(UFreeIdent.create("s"), "indexOf", INDEX_OF_TYPE),
+            UFreeIdent.create("c")),
+        UMethodInvocation.create(
+            UMemberSelect.create(
+                UMethodInvocation.create(UMemberSelect.create(UFreeIdent.create("s"), "trim",
+                    UMethodType.create(UClassType.create("java.lang.String")))),
+                "indexOf", INDEX_OF_TYPE),
+            UFreeIdent.create("c")));
+    assertEquals(ImmutableSet.of("indexOf"), ReferencedIdentifiers.requiredBy(template));
+  }
+
+  @Test
+  public void referencedIn() {
+    assertTrue(ReferencedIdentifiers.in(parseExpression("java.lang.Integer.valueOf(x)"))
+        .containsAll(ImmutableSet.of("java", "lang", "Integer", "valueOf", "x")));
+  }
+}
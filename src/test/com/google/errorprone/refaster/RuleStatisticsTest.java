@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RuleStatistics.Counter;
+import com.google.errorprone.refaster.RuleStatistics.Phase;
+
+import com.sun.tools.javac.util.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link RuleStatistics}.
+ */
+@RunWith(JUnit4.class)
+public class RuleStatisticsTest extends CompilerBasedTest {
+  @Test
+  public void aggregates() {
+    RuleStatistics statistics = RuleStatistics.create();
+    statistics.onCount("com.example.Rule", Counter.FIXES, 1);
+    statistics.onCount("com.example.Rule", Counter.FIXES, 2);
+    statistics.onTime("com.example.Rule", Phase.UNIFY, TimeUnit.MILLISECONDS.toNanos(5));
+    assertEquals(ImmutableSortedSet.of("com.example.Rule"), statistics.rules());
+    assertEquals(3, statistics.count("com.example.Rule", Counter.FIXES));
+    assertEquals(0, statistics.count("com.example.Rule", Counter.TYPECHECKS));
+    assertEquals(5, statistics.time("com.example.Rule", Phase.UNIFY, TimeUnit.MILLISECONDS));
+    assertEquals(0, statistics.count("com.example.Other", Counter.FIXES));
+  }
+
+  @Test
+  public void recordsRuleApplication() {
+    compile(
+        "class RuleStatisticsExample {",
+        "  int example(int x) {",
+        "    return x + 1;",
+        "  }",
+        "  long wider(long y) {",
+        "    return y + 1;",
+        "  }",
+        "}");
+    RefasterRule<?, ?> rule = RefasterRule.create("com.example.PlusOne",
+        ImmutableList.of(ExampleTemplates.plusOne()), ExampleTemplates.increment());
+
+    RuleStatistics statistics = RuleStatistics.create();
+    Context statisticsContext = new SubContext(context);
+    RuleStatistics.bind(statisticsContext, statistics);
+    rule.apply(Iterables.getOnlyElement(compilationUnits), statisticsContext,
+        new DescriptionListener() {
+          @Override
+          public void onDescribed(Description description) {}
+        });
+
+    assertEquals(ImmutableSortedSet.of("com.example.PlusOne"), statistics.rules());
+    assertTrue(statistics.count("com.example.PlusOne", Counter.NODES_VISITED) >= 1);
+    assertEquals(statistics.count("com.example.PlusOne", Counter.NODES_VISITED),
+        statistics.count("com.example.PlusOne", Counter.TEMPLATES_ATTEMPTED));
+    // y + 1 unifies structurally, but is a long rather than an int.
+    assertEquals(2, statistics.count("com.example.PlusOne", Counter.UNIFICATIONS));
+    assertEquals(1, statistics.count("com.example.PlusOne", Counter.TYPECHECKS));
+    assertEquals(0, statistics.count("com.example.PlusOne", Counter.COMMENT_REJECTIONS));
+    assertEquals(1, statistics.count("com.example.PlusOne", Counter.FIXES));
+  }
+}
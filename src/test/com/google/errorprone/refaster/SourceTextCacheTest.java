@@ -0,0 +1,68 @@
+/*
+ * Copyright 2026 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.Iterables;
+import com.google.testing.compile.JavaFileObjects;
+
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+/**
+ * Tests for {@link SourceTextCache}.
+ */
+@RunWith(JUnit4.class)
+public class SourceTextCacheTest extends CompilerBasedTest {
+  @Test
+  public void reusesTextUntilUnitChanges() throws IOException {
+    compile(
+        JavaFileObjects.forSourceLines("First", "class First {}"),
+        JavaFileObjects.forSourceLines("Second", "class Second {}"));
+    JCCompilationUnit first = Iterables.get(compilationUnits, 0);
+    JCCompilationUnit second = Iterables.get(compilationUnits, 1);
+    SourceTextCache cache = SourceTextCache.instance(context);
+
+    CharSequence firstText = cache.getSourceText(first);
+    assertEquals("class First {}", firstText.toString().trim());
+    assertSame(firstText, cache.getSourceText(first));
+
+    CharSequence secondText = cache.getSourceText(second);
+    assertEquals("class Second {}", secondText.toString().trim());
+    assertSame(secondText, cache.getSourceText(second));
+    assertEquals(firstText.toString(), cache.getSourceText(first).toString());
+  }
+
+  @Test
+  public void registeredInstanceShadowsParent() {
+    compile("class Example {}");
+    SourceTextCache parent = SourceTextCache.instance(context);
+    SubContext subContext = new SubContext(context);
+    SourceTextCache child = SourceTextCache.register(subContext);
+    assertNotSame(parent, child);
+    assertSame(child, SourceTextCache.instance(subContext));
+    assertSame(parent, SourceTextCache.instance(context));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCParens;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tests for {@link TemplateIndex}.
+ */
+@RunWith(JUnit4.class)
+public class TemplateIndexTest extends AbstractUTreeTest {
+  private ExpressionTemplate plusOne;
+  private ExpressionTemplate indexOf;
+  private ExpressionTemplate anything;
+  private ImmutableList<Template<?>> templates;
+  private TemplateIndex index;
+  private BitSet all;
+
+  @Before
+  public void createIndex() {
+    plusOne = ExampleTemplates.plusOne();
+    indexOf = ExpressionTemplate.create(
+        UMethodInvocation.create(
+            UMemberSelect.create(UFreeIdent.create("s"), "indexOf",
+                UMethodType.create(UPrimitiveType.INT, UPrimitiveType.INT)),
+            UFreeIdent.create("c")),
+        UPrimitiveType.INT);
+    anything = ExpressionTemplate.create(UFreeIdent.create("x"), UPrimitiveType.INT);
+    templates = ImmutableList.<Template<?>>of(plusOne, indexOf, anything);
+    index = TemplateIndex.create(templates);
+    all = new BitSet();
+    all.set(0, index.size());
+  }
+
+  private List<Template<?>> candidates(JCTree tree, BitSet allowed) {
+    List<Template<?>> result = new ArrayList<>();
+    BitSet candidates = index.candidates(tree, allowed);
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      result.add(templates.get(i));
+    }
+    return result;
+  }
+
+  @Test
+  public void keysOnOperatorAndLiteral() {
+    assertEquals(ImmutableList.of(plusOne, anything), candidates(parseExpression("x + 1"), all));
+    assertEquals(ImmutableList.of(anything), candidates(parseExpression("x + 2"), all));
+    assertEquals(ImmutableList.of(anything), candidates(parseExpression("x - 1"), all));
+  }
+
+  @Test
+  public void keysOnMethodName() {
+    assertEquals(ImmutableList.of(indexOf, anything),
+        candidates(parseExpression("foo.bar().indexOf(c)"), all));
+    assertEquals(ImmutableList.of(indexOf, anything),
+        candidates(parseExpression("indexOf(c)"), all));
+    assertEquals(ImmutableList.of(anything), candidates(parseExpression("foo.bar(c)"), all));
+  }
+
+  @Test
+  public void parentheses() {
+    assertEquals(ImmutableList.of(plusOne, anything), candidates(parseExpression("x + (1)"), all));
+    JCParens parens = (JCParens) parseExpression("(x + 1)");
+    assertEquals(ImmutableList.of(anything), candidates(parens, all));
+    assertEquals(ImmutableList.of(plusOne, anything), candidates(parens.getExpression(), all));
+  }
+
+  @Test
+  public void requiredIdentifiers() {
+    BitSet expected = new BitSet();
+    expected.set(0);
+    expected.set(2);
+    assertEquals(expected, index.applicableTemplates(ImmutableSet.of("x", "foo")));
+    expected.set(1);
+    assertEquals(expected, index.applicableTemplates(ImmutableSet.of("foo", "indexOf")));
+  }
+
+  @Test
+  public void onlyAllowed() {
+    BitSet allowed = new BitSet();
+    allowed.set(0);
+    assertEquals(ImmutableList.of(plusOne), candidates(parseExpression("x + 1"), allowed));
+  }
+
+  @Test
+  public void survivesWritingAndReading() throws IOException {
+    RefasterRuleBundle.Writer writer = new RefasterRuleBundle.Writer();
+    index.write(writer);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.writeTo(new DataOutputStream(out));
+    index = TemplateIndex.read(RefasterRuleBundle.Reader.readFrom(
+        new DataInputStream(new ByteArrayInputStream(out.toByteArray()))));
+
+    assertEquals(ImmutableList.of(plusOne, anything), candidates(parseExpression("x + 1"), all));
+    assertEquals(ImmutableList.of(anything), candidates(parseExpression("x + 2"), all));
+    assertEquals(ImmutableList.of(indexOf, anything),
+        candidates(parseExpression("foo.bar().indexOf(c)"), all));
+    BitSet expected = new BitSet();
+    expected.set(0);
+    expected.set(2);
+    assertEquals(expected, index.applicableTemplates(ImmutableSet.of("x", "foo")));
+  }
+}
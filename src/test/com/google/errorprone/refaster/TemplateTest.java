@@ -0,0 +1,135 @@
+/*
+ * Copyright 2026 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Iterables;
+import com.google.errorprone.refaster.UTypeVar.TypeWithExpression;
+
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.tree.JCTree.JCExpression;
+import com.sun.tools.javac.tree.JCTree.JCReturn;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for the typechecking of matches in {@link Template}.
+ */
+@RunWith(JUnit4.class)
+public class TemplateTest extends CompilerBasedTest {
+  @Before
+  public void compileExamples() {
+    compile(
+        "import com.google.errorprone.refaster.annotation.NoAutoboxing;",
+        "class TemplateExample {",
+        "  CharSequence sequence(CharSequence s) {",
+        "    return s;",
+        "  }",
+        "  Integer boxed(Integer i) {",
+        "    return i;",
+        "  }",
+        "  @NoAutoboxing Integer unboxed(Integer i) {",
+        "    return i;",
+        "  }",
+        "  <T extends CharSequence> T identity(T t) {",
+        "    return t;",
+        "  }",
+        "  String string(String string) {",
+        "    return string;",
+        "  }",
+        "  Object object(Object object) {",
+        "    return object;",
+        "  }",
+        "  int primitive(int primitive) {",
+        "    return primitive;",
+        "  }",
+        "  <K, V extends java.util.List<K>> int size(V list) {",
+        "    return list.size();",
+        "  }",
+        "  int strings(java.util.List<String> strings) {",
+        "    return strings.size();",
+        "  }",
+        "}");
+  }
+
+  private ExpressionTemplate template(String name) {
+    return (ExpressionTemplate) UTemplater.createTemplate(context, getMethodDeclaration(name));
+  }
+
+  private JCExpression returned(String name) {
+    return ((JCReturn) getMethodDeclaration(name).getBody().getStatements().get(0))
+        .getExpression();
+  }
+
+  private boolean matches(ExpressionTemplate template, String target) {
+    return !Iterables.isEmpty(template.match(returned(target), context));
+  }
+
+  @Test
+  public void acceptsSubtypes() {
+    ExpressionTemplate sequence = template("sequence");
+    assertTrue(sequence.typeVariables().isEmpty());
+    assertTrue(matches(sequence, "string"));
+    assertFalse(matches(sequence, "object"));
+  }
+
+  @Test
+  public void autoboxesUnlessForbidden() {
+    assertTrue(matches(template("boxed"), "primitive"));
+    assertFalse(matches(template("unboxed"), "primitive"));
+  }
+
+  @Test
+  public void infersTypeVariables() {
+    ExpressionTemplate identity = template("identity");
+    ExpressionTemplateMatch match =
+        Iterables.getOnlyElement(identity.match(returned("string"), context));
+    TypeWithExpression binding = match.getUnifier().getBinding(
+        Iterables.getOnlyElement(identity.typeVariables()).key());
+    assertEquals("java.lang.String", binding.type().toString());
+    assertFalse(matches(identity, "object"));
+  }
+
+  @Test
+  public void infersDependentTypeVariablesForEachMatch() {
+    ExpressionTemplate size = template("size");
+    // The second match has the same inference problem as the first, and may reuse its result.
+    for (int i = 0; i < 2; i++) {
+      ExpressionTemplateMatch match =
+          Iterables.getOnlyElement(size.match(returned("strings"), context));
+      assertEquals("java.lang.String", binding(match, size, "K").toString());
+      assertEquals("java.util.List<java.lang.String>", binding(match, size, "V").toString());
+    }
+  }
+
+  private static Type binding(
+      ExpressionTemplateMatch match, ExpressionTemplate template, String name) {
+    for (UTypeVar var : template.typeVariables()) {
+      if (var.getName().equals(name)) {
+        return match.getUnifier().getBinding(var.key()).type();
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.errorprone.refaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.tools.javac.tree.JCTree.JCExpression;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link TreeEquivalence}.
+ */
+@RunWith(JUnit4.class)
+public class TreeEquivalenceTest extends AbstractUTreeTest {
+  private void assertEquivalent(String a, String b) {
+    JCExpression aExpr = parseExpression(a);
+    JCExpression bExpr = parseExpression(b);
+    assertTrue(TreeEquivalence.INSTANCE.equivalent(aExpr, bExpr));
+    assertEquals(TreeEquivalence.INSTANCE.hash(aExpr), TreeEquivalence.INSTANCE.hash(bExpr));
+  }
+
+  private void assertNotEquivalent(String a, String b) {
+    assertFalse(TreeEquivalence.INSTANCE.equivalent(parseExpression(a), parseExpression(b)));
+  }
+
+  @Test
+  public void equivalent() {
+    assertEquivalent("foo.bar(baz, 1 + 2)", "foo . bar( baz,1+2 )");
+    assertEquivalent("(String) x", "(String)x");
+    assertEquivalent("new int[] {1, 2}", "new int[]{1,2}");
+  }
+
+  @Test
+  public void notEquivalent() {
+    assertNotEquivalent("foo.bar(baz)", "foo.baz(bar)");
+    assertNotEquivalent("a + b", "a - b");
+    assertNotEquivalent("1", "1L");
+    assertNotEquivalent("\"a\"", "\"b\"");
+    assertNotEquivalent("f(a, b)", "f(a)");
+    assertNotEquivalent("f(g(a), b)", "f(g(a, b))");
+    assertNotEquivalent("(int) x", "(long) x");
+  }
+
+  @Test
+  public void newArrayDimensionsAreNotInitializers() {
+    assertNotEquivalent("new int[1]", "new int[] {1}");
+    assertNotEquivalent("new int[] {}", "new int[0]");
+    assertEquivalent("new int[1][2]", "new int[1] [2]");
+  }
+}
@@ -18,17 +18,26 @@ package com.google.errorprone.refaster;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.testing.EqualsTester;
 import com.google.common.testing.SerializableTester;
 
+import com.sun.source.tree.Tree.Kind;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
+import com.sun.tools.javac.tree.JCTree.JCBinary;
 import com.sun.tools.javac.tree.JCTree.JCExpression;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.Names;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.util.EnumSet;
+
 /**
  * Tests for {@link UFreeIdent}.
  *
@@ -51,6 +60,26 @@ public class UFreeIdentTest extends AbstractUTreeTest {
     assertEquals(ImmutableMap.of(new UFreeIdent.Key("foo"), expr), unifier.getBindings());
   }
   
+  @Test
+  public void rejectsBoundLocalVariables() {
+    JCBinary expr = (JCBinary) parseExpression("x + 1");
+    VarSymbol x = new VarSymbol(0, Names.instance(context).fromString("x"), null, null);
+    ((JCIdent) expr.getLeftOperand()).sym = x;
+    UFreeIdent ident = UFreeIdent.create("foo");
+
+    Object mark = unifier.mark();
+    unifier.putBinding(new ULocalVarIdent.Key("x"),
+        LocalVarBinding.create(x, TreeMaker.instance(context).Modifiers(0L)));
+    assertNull(ident.unify(expr, unifier));
+    unifier.rollback(mark);
+    assertNotNull(ident.unify(expr, unifier));
+  }
+
+  @Test
+  public void targetKinds() {
+    assertEquals(EnumSet.allOf(Kind.class), UFreeIdent.create("foo").targetKinds());
+  }
+
   @Test
   public void equality() {
     new EqualsTester()
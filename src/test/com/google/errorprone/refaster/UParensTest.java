@@ -16,6 +16,8 @@
 
 package com.google.errorprone.refaster;
 
+import static org.junit.Assert.assertEquals;
+
 import com.google.common.testing.EqualsTester;
 import com.google.common.testing.SerializableTester;
 
@@ -25,6 +27,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.util.EnumSet;
+
 /**
  * Tests for {@link UParens}.
  *
@@ -41,6 +45,12 @@ public class UParensTest extends AbstractUTreeTest {
   public void inline() {
     assertInlines("(5L)", UParens.create(ULiteral.longLit(5L)));
   }
+
+  @Test
+  public void targetKinds() {
+    assertEquals(EnumSet.of(Kind.PARENTHESIZED, Kind.LONG_LITERAL),
+        UParens.create(ULiteral.longLit(5L)).targetKinds());
+  }
   
   @Test
   public void equality() {
@@ -17,6 +17,7 @@
 package com.google.errorprone.refaster;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 import com.sun.tools.javac.tree.JCTree;
 
@@ -65,4 +66,19 @@ public class UTemplaterTest extends AbstractUTreeTest {
   public void unary() {
     testTemplateWithoutTypes("~7");
   }
+
+  @Test
+  public void interned() {
+    UTree<?> first = new UTemplater(context).template(parseExpression("\"count:\" + 5"));
+    UTree<?> second = new UTemplater(context).template(parseExpression("\"count:\"+5"));
+    assertSame(first, second);
+  }
+
+  @Test
+  public void internsSubtreesOfLargerTemplates() {
+    UTree<?> sum = new UTemplater(context).template(parseExpression("\"count:\" + 5"));
+    UBinary product = (UBinary) new UTemplater(context).template(
+        parseExpression("(\"count:\" + 5) * 2"));
+    assertSame(sum, ((UParens) product.getLeftOperand()).getExpression());
+  }
 }